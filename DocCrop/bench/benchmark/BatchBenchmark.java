@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import mvc.model.ImageBatch;
+import mvc.model.ImageBatches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import common.ImageBatchSettings;
+
+/**
+ * Throughput of a complete batch run, reading and identifying a directory of
+ * synthetic scans. The score is in documents per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BatchBenchmark {
+
+	private static final int DOCUMENTS = 16;
+
+	/** Number of worker threads */
+	@Param({ "1", "2", "4" })
+	public int threads;
+
+	/** The longest side of the scans, the other side is 3/4 of it */
+	@Param({ "1600", "3200" })
+	public int size;
+
+	private File dir;
+	private ImageBatchSettings settings;
+
+	@Setup
+	public void setUp() throws IOException {
+		dir = File.createTempFile("doccrop-bench", "");
+		dir.delete();
+		SyntheticDocument.write(dir, DOCUMENTS, size, size * 3 / 4, 10);
+
+		settings = new ImageBatchSettings();
+		settings.setThreads(threads);
+	}
+
+	@TearDown
+	public void tearDown() {
+		SyntheticDocument.delete(dir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DOCUMENTS)
+	public void analyzeBatches(Blackhole blackhole) {
+		ImageBatches batches = new ImageBatches(new File[] { dir }, settings);
+		batches.analyzeBatches();
+		for (ImageBatch batch : batches.getBatches())
+			blackhole.consume(batch.getDocuments());
+	}
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import imageanalysis.DocumentIdentifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.Document;
+
+/**
+ * Benchmark of a complete identification of a synthetic scan, with and
+ * without reading the image file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class IdentifyBenchmark {
+
+	/** The longest side of the scan, the other side is 3/4 of it */
+	@Param({ "800", "1600", "3200" })
+	public int size;
+
+	/** Maximal noise deviation per pixel */
+	@Param({ "0", "25" })
+	public int noise;
+
+	private File file;
+	private DocumentIdentifier identifier;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = File.createTempFile("doccrop-bench", ".png");
+		ImageIO.write(SyntheticDocument.create(size, size * 3 / 4, noise, 1),
+				"png", file);
+		identifier = new DocumentIdentifier(file.getPath());
+		identifier.load();
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Document identify() {
+		return identifier.identify();
+	}
+
+	@Benchmark
+	public Document loadAndIdentify() throws IOException {
+		identifier.load();
+		return identifier.identify();
+	}
+}
@@ -0,0 +1,86 @@
+package benchmark;
+
+import imageanalysis.morphology.Closing;
+import imageanalysis.morphology.Dilation;
+import imageanalysis.morphology.Erosion;
+import imageanalysis.morphology.MorphologicalOperation;
+import imageanalysis.morphology.MorphologicalOperation.STRUCTURING_ELEMENT_SHAPE;
+import imageanalysis.morphology.MorphologyBuffers;
+import imageanalysis.morphology.None;
+import imageanalysis.morphology.Opening;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.ImageUtilities;
+
+/**
+ * Benchmarks of the morphological operations on a scaled, grayscale synthetic
+ * scan, for the shape sizes the identifier goes through when it retries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MorphologyBenchmark {
+
+	@Param({ "Closing", "Opening", "Dilation", "Erosion", "None" })
+	public String operation;
+
+	@Param({ "SQUARE", "HORIZONTAL_LINE", "VERTICAL_LINE" })
+	public STRUCTURING_ELEMENT_SHAPE shape;
+
+	@Param({ "1", "4", "12" })
+	public int shapeSize;
+
+	/** Maximal noise deviation per pixel */
+	@Param({ "0", "25" })
+	public int noise;
+
+	private MorphologicalOperation morphOp;
+	private MorphologyBuffers buffers;
+	private BufferedImage gray;
+
+	@Setup
+	public void setUp() {
+		BufferedImage source = SyntheticDocument.create(1600, 1200, noise, 1);
+		gray = ImageUtilities.convertToGrayScale(ImageUtilities.scaleImage(
+				source, (double) StageBenchmark.IMAGE_PROCESS_SIZE / 1600));
+
+		if (operation.equals("Closing"))
+			morphOp = new Closing(shape, shapeSize);
+		else if (operation.equals("Opening"))
+			morphOp = new Opening(shape, shapeSize);
+		else if (operation.equals("Dilation"))
+			morphOp = new Dilation(shape, shapeSize);
+		else if (operation.equals("Erosion"))
+			morphOp = new Erosion(shape, shapeSize);
+		else
+			morphOp = new None(shape, shapeSize);
+		buffers = new MorphologyBuffers();
+	}
+
+	@Benchmark
+	public BufferedImage execute() {
+		return morphOp.execute(gray);
+	}
+
+	@Benchmark
+	public BufferedImage executeWithBuffers() {
+		return morphOp.execute(gray, buffers);
+	}
+}
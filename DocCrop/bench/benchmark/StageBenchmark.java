@@ -0,0 +1,176 @@
+package benchmark;
+
+import imageanalysis.canny.CannyEdgeDetector;
+import imageanalysis.hough.HoughData;
+import imageanalysis.hough.HoughTransform;
+import imageanalysis.hough.HoughUtilities;
+import imageanalysis.morphology.Closing;
+import imageanalysis.morphology.MorphologicalOperation.STRUCTURING_ELEMENT_SHAPE;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.ImageUtilities;
+import common.PointUtilities;
+
+/**
+ * Benchmarks of the separate stages of
+ * <code>DocumentIdentifier.identify()</code>. Every stage gets the input the
+ * previous stages produce for a synthetic scan, computed once per trial, with
+ * the same settings as the identifier uses by default.
+ * <p>
+ * The benchmarks are run with the JMH runner, with the application classes,
+ * EJML and JMH (with its annotation processor) on the class path:
+ *
+ * <pre>
+ * java -cp ... org.openjdk.jmh.Main benchmark.StageBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class StageBenchmark {
+
+	// Same values as the defaults of DocumentIdentifier
+	static final int IMAGE_PROCESS_SIZE = 600;
+	static final int LINE_ITERATIONS = 5;
+	static final double HIGH_LINE_THRESHOLD = 0.5;
+	static final double LOW_LINE_THRESHOLD = 0.1;
+	static final int COLOR_THRESHOLD = 10;
+
+	/** The longest side of the scan, the other side is 3/4 of it */
+	@Param({ "800", "1600", "3200" })
+	public int size;
+
+	/** Maximal noise deviation per pixel */
+	@Param({ "0", "25" })
+	public int noise;
+
+	private BufferedImage source;
+	private double scaleFactor;
+	private BufferedImage scaled;
+	private BufferedImage gray;
+	private BufferedImage morphed;
+	private CannyEdgeDetector canny;
+	private CannyEdgeDetector parallelCanny;
+	private int[] edges;
+	private HoughTransform hough;
+	private HoughTransform parallelHough;
+	private int lineThreshold;
+	private HoughData houghData;
+	private HoughData filtered;
+
+	@Setup
+	public void setUp() {
+		source = SyntheticDocument.create(size, size * 3 / 4, noise, 1);
+		scaleFactor = (double) IMAGE_PROCESS_SIZE / size;
+		scaled = ImageUtilities.scaleImage(source, scaleFactor);
+		gray = ImageUtilities.convertToGrayScale(scaled);
+		morphed = new Closing(STRUCTURING_ELEMENT_SHAPE.SQUARE, 1)
+				.execute(gray);
+
+		canny = new CannyEdgeDetector();
+		canny.setSourceImage(morphed);
+		canny.process();
+		edges = canny.getEdgesData().clone();
+		parallelCanny = new CannyEdgeDetector();
+		parallelCanny.setParallel(true);
+		parallelCanny.setSourceImage(morphed);
+
+		int width = morphed.getWidth();
+		int height = morphed.getHeight();
+		hough = new HoughTransform(width, height);
+		hough.addPoints(edges);
+		lineThreshold = (int) (HIGH_LINE_THRESHOLD * hough.getHighestValue());
+		parallelHough = new HoughTransform(width, height);
+		parallelHough.setParallel(true);
+
+		houghData = HoughUtilities.runHoughIterations(hough, LINE_ITERATIONS,
+				HIGH_LINE_THRESHOLD, LOW_LINE_THRESHOLD);
+		filtered = HoughUtilities.filterIntersections(scaled, houghData,
+				COLOR_THRESHOLD);
+	}
+
+	@Benchmark
+	public BufferedImage scaleImage() {
+		return ImageUtilities.scaleImage(source, scaleFactor);
+	}
+
+	@Benchmark
+	public BufferedImage convertToGrayScale() {
+		return ImageUtilities.convertToGrayScale(scaled);
+	}
+
+	@Benchmark
+	public int[] cannyProcess() {
+		canny.process();
+		return canny.getEdgesData();
+	}
+
+	@Benchmark
+	public int[] cannyProcessParallel() {
+		parallelCanny.process();
+		return parallelCanny.getEdgesData();
+	}
+
+	@Benchmark
+	public HoughTransform houghAddPoints() {
+		hough.reset();
+		hough.addPoints(edges);
+		return hough;
+	}
+
+	@Benchmark
+	public HoughTransform houghAddPointsParallel() {
+		parallelHough.reset();
+		parallelHough.addPoints(edges);
+		return parallelHough;
+	}
+
+	@Benchmark
+	public HoughData houghGetLines() {
+		return hough.getLineData(lineThreshold);
+	}
+
+	@Benchmark
+	public HoughData runHoughIterations() {
+		return HoughUtilities.runHoughIterations(hough, LINE_ITERATIONS,
+				HIGH_LINE_THRESHOLD, LOW_LINE_THRESHOLD);
+	}
+
+	@Benchmark
+	public HoughData getIntersections() {
+		HoughUtilities.computeIntersections(morphed.getWidth(),
+				morphed.getHeight(), houghData, 2);
+		return houghData;
+	}
+
+	@Benchmark
+	public HoughData filterIntersections() {
+		return HoughUtilities.filterIntersections(scaled, houghData,
+				COLOR_THRESHOLD);
+	}
+
+	@Benchmark
+	public Point[] minimalEnclosingRectangle() {
+		return PointUtilities.minimalEnclosingRectangle(filtered.getX(),
+				filtered.getY(), filtered.getIntersectionCount(),
+				PointUtilities.METRIC_AREA);
+	}
+}
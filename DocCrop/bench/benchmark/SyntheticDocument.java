@@ -0,0 +1,122 @@
+package benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Creates synthetic scans for the benchmarks: a light, slightly rotated page
+ * with lines of text on a dark background, with optional noise. The images
+ * are created from a seed, so every run of a benchmark works on the same
+ * pixels.
+ */
+public class SyntheticDocument {
+
+	/**
+	 * Create a synthetic scan
+	 *
+	 * @param width
+	 *            The width of the image
+	 * @param height
+	 *            The height of the image
+	 * @param noise
+	 *            Maximal deviation of the noise added to every pixel, 0 for
+	 *            no noise
+	 * @param seed
+	 *            Seed deciding the placement and rotation of the page and the
+	 *            noise
+	 * @return A TYPE_INT_RGB image
+	 */
+	public static BufferedImage create(int width, int height, int noise,
+			long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+
+		Graphics2D g = img.createGraphics();
+		g.setColor(new Color(40, 40, 45));
+		g.fillRect(0, 0, width, height);
+
+		// The page covers about two thirds of the scan
+		g.rotate(Math.toRadians(random.nextInt(7) - 3), width / 2, height / 2);
+		int pageWidth = width * 2 / 3;
+		int pageHeight = height * 2 / 3;
+		int pageX = (width - pageWidth) / 2 + random.nextInt(width / 20 + 1);
+		int pageY = (height - pageHeight) / 2 + random.nextInt(height / 20 + 1);
+		g.setColor(new Color(235, 230, 220));
+		g.fillRect(pageX, pageY, pageWidth, pageHeight);
+
+		g.setColor(Color.DARK_GRAY);
+		int lineHeight = Math.max(height / 60, 10);
+		for (int y = pageY + 3 * lineHeight; y < pageY + pageHeight - 2
+				* lineHeight; y += lineHeight) {
+			g.fillRect(pageX + pageWidth / 10, y, random.nextInt(pageWidth
+					* 8 / 10), lineHeight / 3);
+		}
+		g.dispose();
+
+		if (noise > 0) {
+			int[] row = new int[width];
+			for (int y = 0; y < height; y++) {
+				img.getRGB(0, y, width, 1, row, 0, width);
+				for (int x = 0; x < width; x++) {
+					int d = random.nextInt(2 * noise + 1) - noise;
+					int r = clamp(((row[x] >> 16) & 0xff) + d);
+					int gr = clamp(((row[x] >> 8) & 0xff) + d);
+					int b = clamp((row[x] & 0xff) + d);
+					row[x] = (r << 16) | (gr << 8) | b;
+				}
+				img.setRGB(0, y, width, 1, row, 0, width);
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * Write a number of synthetic scans to a directory, as PNG files
+	 *
+	 * @param dir
+	 *            The directory to write to, created if needed
+	 * @param count
+	 *            The number of scans
+	 * @param width
+	 *            The width of the scans
+	 * @param height
+	 *            The height of the scans
+	 * @param noise
+	 *            Noise level, see
+	 *            {@link #create(int, int, int, long)}
+	 * @throws IOException
+	 *             If a scan could not be written
+	 */
+	public static void write(File dir, int count, int width, int height,
+			int noise) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+		for (int i = 0; i < count; i++) {
+			ImageIO.write(create(width, height, noise, i), "png", new File(dir,
+					String.format("scan%03d.png", i)));
+		}
+	}
+
+	/**
+	 * Delete a directory written by {@link #write(File, int, int, int, int)}
+	 */
+	public static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files)
+				file.delete();
+		}
+		dir.delete();
+	}
+
+	private static int clamp(int value) {
+		return value < 0 ? 0 : value > 255 ? 255 : value;
+	}
+}
@@ -0,0 +1,334 @@
+package common;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scales images by area averaging, every pixel in the scaled image gets the
+ * average of the area it covers in the source image. The source is read one
+ * row at a time and only a single row of sums is kept, so apart from the
+ * source the memory needed is about the size of the scaled image.
+ *
+ * Every call to {@link #scale(BufferedImage, int, int)} creates both a color
+ * image and a grayscale image, so that no separate grayscale conversion is
+ * needed. The gray levels are the same as the ones Java2D produces when
+ * drawing the color image onto a TYPE_BYTE_GRAY image.
+ */
+public class AreaAveragingScaler {
+
+	// Smallest number of scaled rows created by a single parallel task
+	private static final int MIN_BAND_ROWS = 16;
+
+	private boolean parallel;
+	private BufferedImage colorImage;
+	private BufferedImage grayImage;
+
+	/**
+	 * Scale the image by multiplying the height and the width of the image by
+	 * the scale factor
+	 *
+	 * @param img
+	 *            The image to scale
+	 * @param scale
+	 *            The scale factor, scale > 0. Scale < 1 yields a smaller image.
+	 */
+	public void scale(BufferedImage img, double scale) {
+		if (scale <= 0)
+			throw (new IllegalArgumentException(
+					"Input parameter scale must be > 0: " + scale));
+		scale(img, (int) (img.getWidth() * scale),
+				(int) (img.getHeight() * scale));
+	}
+
+	/**
+	 * Scale the image to the given size. The result is available from
+	 * {@link #getColorImage()} and {@link #getGrayImage()}.
+	 *
+	 * @param img
+	 *            The image to scale
+	 * @param width
+	 *            The width of the scaled image, > 0
+	 * @param height
+	 *            The height of the scaled image, > 0
+	 */
+	public void scale(BufferedImage img, int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid size: " + width
+					+ " x " + height);
+
+		boolean gray = img.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		grayImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_BYTE_GRAY);
+		// A grayscale source only needs the grayscale image
+		colorImage = gray ? grayImage : new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+
+		Segments columns = new Segments(img.getWidth(), width);
+		Segments rows = new Segments(img.getHeight(), height);
+		ScaleTask task = new ScaleTask(img, gray, columns, rows, 0, height);
+		if (parallel)
+			ForkJoinPool.commonPool().invoke(task);
+		else
+			task.compute();
+	}
+
+	/**
+	 * The scaled color image, of type TYPE_INT_RGB. If the source was a
+	 * grayscale image this is the same image as {@link #getGrayImage()}.
+	 */
+	public BufferedImage getColorImage() {
+		return colorImage;
+	}
+
+	/**
+	 * The scaled grayscale image, of type TYPE_BYTE_GRAY
+	 */
+	public BufferedImage getGrayImage() {
+		return grayImage;
+	}
+
+	/**
+	 * Set whether the rows of the scaled image should be created in parallel,
+	 * on the common fork-join pool. The result is the same in both modes. The
+	 * default is serial scaling.
+	 *
+	 * @param parallel
+	 *            True for parallel scaling
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * The overlaps between the source pixels and the scaled pixels along one
+	 * axis, in order. Every segment tells how much of a scaled pixel a source
+	 * pixel covers, the weights of every scaled pixel add up to one.
+	 */
+	private static class Segments {
+		int count;
+		int[] source;
+		int[] target;
+		float[] weight;
+		// Index of the first segment of every scaled pixel, and the end
+		int[] first;
+
+		Segments(int sourceLength, int targetLength) {
+			int capacity = sourceLength + targetLength;
+			source = new int[capacity];
+			target = new int[capacity];
+			weight = new float[capacity];
+			first = new int[targetLength + 1];
+
+			double step = (double) sourceLength / targetLength;
+			double position = 0;
+			int s = 0, t = 0;
+			while (s < sourceLength && t < targetLength) {
+				double sourceEnd = s + 1;
+				double targetEnd = t == targetLength - 1 ? sourceLength
+						: (t + 1) * step;
+				double end = Math.min(sourceEnd, targetEnd);
+				if (end > position) {
+					source[count] = s;
+					target[count] = t;
+					weight[count] = (float) ((end - position) / step);
+					count++;
+				}
+				position = end;
+				if (sourceEnd <= targetEnd)
+					s++;
+				if (targetEnd <= sourceEnd) {
+					t++;
+					first[t] = count;
+				}
+			}
+			while (t < targetLength)
+				first[++t] = count;
+		}
+	}
+
+	/**
+	 * Creates a band of rows of the scaled images, splitting the band between
+	 * sub tasks if running in parallel.
+	 */
+	@SuppressWarnings("serial")
+	private class ScaleTask extends RecursiveAction {
+		private final BufferedImage img;
+		private final boolean gray;
+		private final Segments columns, rows;
+		private final int fromRow, toRow;
+
+		ScaleTask(BufferedImage img, boolean gray, Segments columns,
+				Segments rows, int fromRow, int toRow) {
+			this.img = img;
+			this.gray = gray;
+			this.columns = columns;
+			this.rows = rows;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (parallel && toRow - fromRow > MIN_BAND_ROWS) {
+				int middle = (fromRow + toRow) >>> 1;
+				invokeAll(new ScaleTask(img, gray, columns, rows, fromRow,
+						middle), new ScaleTask(img, gray, columns, rows,
+						middle, toRow));
+				return;
+			}
+			if (gray)
+				scaleGray();
+			else
+				scaleColor();
+		}
+
+		private void scaleColor() {
+			int width = grayImage.getWidth();
+			int sourceWidth = img.getWidth();
+			int[] colors = ((DataBufferInt) colorImage.getRaster()
+					.getDataBuffer()).getData();
+			byte[] grays = ((DataBufferByte) grayImage.getRaster()
+					.getDataBuffer()).getData();
+
+			int[] line = new int[sourceWidth];
+			byte[] byteLine = null;
+			float[] red = new float[width];
+			float[] green = new float[width];
+			float[] blue = new float[width];
+			float[] sumRed = new float[width];
+			float[] sumGreen = new float[width];
+			float[] sumBlue = new float[width];
+
+			int type = img.getType();
+			Raster raster = img.getRaster();
+			if (type == BufferedImage.TYPE_3BYTE_BGR)
+				byteLine = new byte[3 * sourceWidth];
+
+			int lineIndex = -1;
+			for (int row = fromRow; row < toRow; row++) {
+				for (int k = rows.first[row]; k < rows.first[row + 1]; k++) {
+					int y = rows.source[k];
+					if (y != lineIndex) {
+						// Shrink the source row to the scaled width
+						readLine(raster, type, y, line, byteLine);
+						reduceLine(line, red, green, blue);
+						lineIndex = y;
+					}
+					float w = rows.weight[k];
+					for (int x = 0; x < width; x++) {
+						sumRed[x] += w * red[x];
+						sumGreen[x] += w * green[x];
+						sumBlue[x] += w * blue[x];
+					}
+				}
+
+				int offset = row * width;
+				for (int x = 0; x < width; x++) {
+					int r = round(sumRed[x]);
+					int g = round(sumGreen[x]);
+					int b = round(sumBlue[x]);
+					colors[offset + x] = (r << 16) | (g << 8) | b;
+					grays[offset + x] = (byte) ((77 * r + 150 * g + 29 * b
+							+ 128) >> 8);
+					sumRed[x] = 0;
+					sumGreen[x] = 0;
+					sumBlue[x] = 0;
+				}
+			}
+		}
+
+		private void scaleGray() {
+			int width = grayImage.getWidth();
+			byte[] grays = ((DataBufferByte) grayImage.getRaster()
+					.getDataBuffer()).getData();
+
+			byte[] line = new byte[img.getWidth()];
+			float[] values = new float[width];
+			float[] sums = new float[width];
+			Raster raster = img.getRaster();
+
+			int lineIndex = -1;
+			for (int row = fromRow; row < toRow; row++) {
+				for (int k = rows.first[row]; k < rows.first[row + 1]; k++) {
+					int y = rows.source[k];
+					if (y != lineIndex) {
+						raster.getDataElements(0, y, line.length, 1, line);
+						for (int x = 0; x < width; x++)
+							values[x] = 0;
+						for (int j = 0; j < columns.count; j++)
+							values[columns.target[j]] += columns.weight[j]
+									* (line[columns.source[j]] & 0xff);
+						lineIndex = y;
+					}
+					float w = rows.weight[k];
+					for (int x = 0; x < width; x++)
+						sums[x] += w * values[x];
+				}
+
+				int offset = row * width;
+				for (int x = 0; x < width; x++) {
+					grays[offset + x] = (byte) round(sums[x]);
+					sums[x] = 0;
+				}
+			}
+		}
+
+		/**
+		 * Read a source row as packed RGB values
+		 */
+		private void readLine(Raster raster, int type, int y, int[] line,
+				byte[] byteLine) {
+			int width = line.length;
+			switch (type) {
+			case BufferedImage.TYPE_INT_RGB:
+			case BufferedImage.TYPE_INT_ARGB:
+				raster.getDataElements(0, y, width, 1, line);
+				break;
+			case BufferedImage.TYPE_3BYTE_BGR:
+				raster.getDataElements(0, y, width, 1, byteLine);
+				// The elements come in band order, red first
+				for (int x = 0, i = 0; x < width; x++, i += 3) {
+					line[x] = ((byteLine[i] & 0xff) << 16)
+							| ((byteLine[i + 1] & 0xff) << 8)
+							| (byteLine[i + 2] & 0xff);
+				}
+				break;
+			default:
+				img.getRGB(0, y, width, 1, line, 0, width);
+			}
+		}
+
+		/**
+		 * Average a source row horizontally, into the scaled width
+		 */
+		private void reduceLine(int[] line, float[] red, float[] green,
+				float[] blue) {
+			for (int x = 0; x < red.length; x++) {
+				red[x] = 0;
+				green[x] = 0;
+				blue[x] = 0;
+			}
+			for (int j = 0; j < columns.count; j++) {
+				int p = line[columns.source[j]];
+				int t = columns.target[j];
+				float w = columns.weight[j];
+				red[t] += w * ((p >> 16) & 0xff);
+				green[t] += w * ((p >> 8) & 0xff);
+				blue[t] += w * (p & 0xff);
+			}
+		}
+	}
+
+	private static int round(float value) {
+		int v = (int) (value + 0.5f);
+		return v < 0 ? 0 : v > 255 ? 255 : v;
+	}
+}
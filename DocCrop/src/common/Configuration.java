@@ -2,6 +2,7 @@ package common;
 
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Toolkit;
 import java.io.File;
@@ -37,10 +38,15 @@ public class Configuration {
 		int width = 650;
 		int height = 300;
 
-		// Get screen size and center of screen
-		Dimension dim = Toolkit.getDefaultToolkit().getScreenSize();
-		int x = (dim.width - width) / 2;
-		int y = (dim.height - height) / 2;
+		// Get screen size and center of screen. There is no screen when
+		// running headless, e.g. from the command line on a server
+		int x = 0;
+		int y = 0;
+		if (!GraphicsEnvironment.isHeadless()) {
+			Dimension dim = Toolkit.getDefaultToolkit().getScreenSize();
+			x = (dim.width - width) / 2;
+			y = (dim.height - height) / 2;
+		}
 
 		defaultProperties.setProperty("window.x", Integer.toString(x));
 		defaultProperties.setProperty("window.y", Integer.toString(y));
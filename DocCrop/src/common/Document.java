@@ -167,7 +167,9 @@ public class Document {
 	 * first and second corner points. The width of the document is defined by
 	 * the difference of the third and the second corner points. The rotation is
 	 * decided by the edge going from the second to the third corner point,
-	 * counting clockwise with respect to the x-axis.
+	 * counting clockwise with respect to the x-axis. It is turned by a multiple
+	 * of 90 degrees into (-45, 45], swapping the width and the height when
+	 * needed, so that an upright document is never turned on its side.
 	 * 
 	 * @param a
 	 *            First corner point (x,y >= 0)
@@ -187,14 +189,22 @@ public class Document {
 
 		int x = a.x + (c.x - a.x) / 2;
 		int y = a.y + (c.y - a.y) / 2;
-		int rotation;
-		if (c.x - b.x == 0)
-			rotation = 90;
-		else
-			rotation = (int) Math.toDegrees(Math
-					.atan((c.y - b.y) / (c.x - b.x)));
-
-		return new Document(new Point(x, y), width, height, rotation);
+		double angle = Math.toDegrees(Math.atan2(c.y - b.y, c.x - b.x));
+		while (angle > 45) {
+			angle -= 90;
+			int tmp = width;
+			width = height;
+			height = tmp;
+		}
+		while (angle <= -45) {
+			angle += 90;
+			int tmp = width;
+			width = height;
+			height = tmp;
+		}
+
+		return new Document(new Point(x, y), width, height,
+				(int) Math.round(angle));
 	}
 
 	/**
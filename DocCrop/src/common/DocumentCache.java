@@ -0,0 +1,295 @@
+package common;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A persistent cache of identified documents, so that files which have not
+ * changed are not identified again when a batch is analyzed anew.
+ *
+ * Every document is stored under a 64 bit key, computed from a fingerprint of
+ * the image file and the parameters of the identification, see
+ * {@link #getKey(File, String)}. The fingerprint is the path, the size and the
+ * modification time of the file, or, if content hashing is turned on, the
+ * size and a hash of the contents.
+ *
+ * Files in which no document was found are cached as well, so that they are
+ * not identified again either.
+ *
+ * The cache file is append-only while the cache is open. It starts with a
+ * header, followed by records of a fixed size: the key, a flag telling if a
+ * document was found, and the location, size and rotation of the document.
+ * A cache file of an older version is replaced. When the same key occurs
+ * more than once the last record wins. The least recently used documents are
+ * evicted when the cache is full, and the file is rewritten without the
+ * evicted and overwritten records on {@link #close()}, once they make up half
+ * of it.
+ *
+ * The cache is thread safe.
+ */
+public class DocumentCache {
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	// "DCC" followed by the version of the file format
+	private static final int MAGIC = 0x44434302;
+	// Bytes of a record: the key, the flag and five ints
+	private static final int RECORD_SIZE = 8 + 6 * 4;
+	// Entry of a file in which no document was found
+	private static final int[] NO_DOCUMENT = new int[0];
+
+	private final File file;
+	private final boolean contentHashing;
+	private final LinkedHashMap<Long, int[]> entries;
+	private DataOutputStream output;
+	// Records in the file, including evicted and overwritten ones
+	private int records;
+
+	/**
+	 * Open the cache stored in the file. If the file does not exist, an empty
+	 * cache is created.
+	 *
+	 * @param file
+	 *            The cache file
+	 * @param maxEntries
+	 *            The maximum number of documents in the cache (>= 1)
+	 * @param contentHashing
+	 *            True if the contents of the image files should be part of
+	 *            the fingerprint, false to trust the modification time
+	 * @throws IOException
+	 *             If the file could not be read, or is not a cache file
+	 */
+	public DocumentCache(File file, final int maxEntries,
+			boolean contentHashing) throws IOException {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException(
+					"The size of the cache must be >= 1");
+		this.file = file;
+		this.contentHashing = contentHashing;
+		entries = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		if (file.exists())
+			read();
+	}
+
+	private void read() throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			int magic = input.readInt();
+			if (magic >>> 8 != MAGIC >>> 8)
+				throw new IOException("Not a document cache: " + file);
+			if (magic != MAGIC) {
+				// An older version, replaced by the next rewrite
+				records = Integer.MAX_VALUE;
+				return;
+			}
+			long readBytes = 4;
+			long length = file.length();
+			while (readBytes + RECORD_SIZE <= length) {
+				long key = input.readLong();
+				boolean found = input.readInt() != 0;
+				int[] doc = new int[5];
+				for (int i = 0; i < doc.length; i++) {
+					doc[i] = input.readInt();
+				}
+				entries.put(key, found ? doc : NO_DOCUMENT);
+				readBytes += RECORD_SIZE;
+				records++;
+			}
+		} catch (EOFException e) {
+			throw new IOException("Not a document cache: " + file);
+		} finally {
+			input.close();
+		}
+		// A record cut off by a crash is dropped by the next rewrite
+		if ((file.length() - 4) % RECORD_SIZE != 0)
+			records = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Compute the key of an image file identified with the given parameters
+	 *
+	 * @param imageFile
+	 *            The image file
+	 * @param parameters
+	 *            The parameters of the identification, see
+	 *            {@link imageanalysis.DocumentIdentifier#getParameters()}
+	 * @return The key
+	 * @throws IOException
+	 *             If the contents of the file could not be read
+	 */
+	public long getKey(File imageFile, String parameters) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1
+			throw new RuntimeException(e);
+		}
+		String fingerprint = imageFile.length() + "\n";
+		if (contentHashing) {
+			byte[] buffer = new byte[64 * 1024];
+			InputStream input = new FileInputStream(imageFile);
+			try {
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				input.close();
+			}
+		} else {
+			fingerprint += imageFile.getAbsolutePath() + "\n"
+					+ imageFile.lastModified() + "\n";
+		}
+		digest.update((fingerprint + parameters).getBytes("UTF-8"));
+
+		byte[] hash = digest.digest();
+		long key = 0;
+		for (int i = 0; i < 8; i++) {
+			key = (key << 8) | (hash[i] & 0xff);
+		}
+		return key;
+	}
+
+	/**
+	 * Check if the result of an identification is cached, either a document
+	 * or that no document was found
+	 *
+	 * @param key
+	 *            The key of the document, see {@link #getKey(File, String)}
+	 * @return True if the result is in the cache
+	 */
+	public synchronized boolean contains(long key) {
+		return entries.get(key) != null;
+	}
+
+	/**
+	 * Get a cached document
+	 *
+	 * @param key
+	 *            The key of the document, see {@link #getKey(File, String)}
+	 * @param id
+	 *            The id to give the document
+	 * @return The document, or null if no document was found in the file or
+	 *         if it is not in the cache, see {@link #contains(long)}
+	 */
+	public synchronized Document get(long key, String id) {
+		int[] doc = entries.get(key);
+		if (doc == null || doc == NO_DOCUMENT)
+			return null;
+		Document document = new Document();
+		document.setLocation(new Point(doc[0], doc[1]));
+		document.setWidth(doc[2]);
+		document.setHeight(doc[3]);
+		document.setRotation(doc[4]);
+		document.setId(id);
+		return document;
+	}
+
+	/**
+	 * Store a document in the cache, and append it to the cache file
+	 *
+	 * @param key
+	 *            The key of the document, see {@link #getKey(File, String)}
+	 * @param document
+	 *            The document to store, or null if no document was found
+	 * @throws IOException
+	 *             If the document could not be written to the cache file
+	 */
+	public synchronized void put(long key, Document document)
+			throws IOException {
+		if (output == null) {
+			if (records == Integer.MAX_VALUE || !file.exists())
+				rewrite();
+			output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file, true)));
+		}
+		int[] doc = NO_DOCUMENT;
+		if (document != null)
+			doc = new int[] { document.getX(), document.getY(),
+					document.getWidth(), document.getHeight(),
+					document.getRotation() };
+		entries.put(key, doc);
+		write(output, key, doc);
+		records++;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Write the appended documents to the cache file, and rewrite the file if
+	 * at least half of the records are evicted or overwritten
+	 *
+	 * @throws IOException
+	 *             If the cache file could not be written
+	 */
+	public synchronized void close() throws IOException {
+		if (output != null) {
+			output.close();
+			output = null;
+		}
+		if (records > 2 * entries.size())
+			rewrite();
+	}
+
+	/**
+	 * Write all documents in the cache to a new file, least recently used
+	 * first so that the order survives a reload, and replace the cache file
+	 * with it
+	 */
+	private void rewrite() throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			Iterator<Map.Entry<Long, int[]>> it = entries.entrySet()
+					.iterator();
+			while (it.hasNext()) {
+				Map.Entry<Long, int[]> entry = it.next();
+				write(out, entry.getKey(), entry.getValue());
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			// Renaming onto an existing file fails on some platforms
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Could not replace " + file);
+		}
+		records = entries.size();
+	}
+
+	private static void write(DataOutputStream out, long key, int[] doc)
+			throws IOException {
+		out.writeLong(key);
+		out.writeInt(doc == NO_DOCUMENT ? 0 : 1);
+		for (int i = 0; i < 5; i++) {
+			out.writeInt(doc == NO_DOCUMENT ? 0 : doc[i]);
+		}
+	}
+}
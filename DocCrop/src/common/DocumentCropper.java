@@ -0,0 +1,306 @@
+package common;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+
+/**
+ * Cuts documents out of their images. The document is sampled from the image
+ * with bilinear interpolation, along its own axes, so a rotated document gives
+ * an upright image of the size of the document.
+ *
+ * Only the part of the image file covering the document is decoded, and the
+ * cropped image is filled a tile of rows at a time, reading just the source
+ * pixels the tile needs. So apart from the cropped image itself, the memory
+ * used is about the size of the document, however large the scan is.
+ *
+ * Documents that are not rotated, which is the common case after the
+ * correction of a batch, are not resampled at all. Their pixels are copied
+ * as they are, and when cropping from file the decoded region is the cropped
+ * image.
+ */
+public final class DocumentCropper {
+
+	// Number of rows of the cropped image created at a time
+	private static final int TILE_ROWS = 64;
+
+	/**
+	 * Private constructor, no instance of DocumentCropper is needed
+	 */
+	private DocumentCropper() {
+	}
+
+	/**
+	 * Crop a document out of the image file it was identified in
+	 *
+	 * @param doc
+	 *            The document, with the path to the image file as id
+	 * @return The cropped document, of type TYPE_BYTE_GRAY for grayscale
+	 *         images and TYPE_INT_RGB otherwise. A document that is not
+	 *         rotated may also be cropped to a TYPE_3BYTE_BGR image, the type
+	 *         most color images are decoded to.
+	 * @throws IOException
+	 *             If the image could not be read, or if the document lies
+	 *             outside the image
+	 */
+	public static BufferedImage crop(Document doc) throws IOException {
+		Dimension size = ImageUtilities.getImageDimension(doc.getId());
+		Rectangle imageBounds = new Rectangle(0, 0, size.width, size.height);
+		if (doc.getRotation() == 0) {
+			// Decode exactly the document, no resampling needed
+			Rectangle rect = getRectangle(doc);
+			if (imageBounds.contains(rect)) {
+				BufferedImage img = ImageUtilities.readImage(doc.getId(),
+						rect);
+				int type = img.getType();
+				if (type == BufferedImage.TYPE_BYTE_GRAY
+						|| type == BufferedImage.TYPE_INT_RGB
+						|| type == BufferedImage.TYPE_3BYTE_BGR)
+					return img;
+				return crop(img, rect.x, rect.y, doc);
+			}
+		}
+		Rectangle region = getBounds(doc).intersection(imageBounds);
+		if (region.isEmpty())
+			throw new IOException("The document lies outside the image: "
+					+ doc.getId());
+		BufferedImage source = ImageUtilities.readImage(doc.getId(), region);
+		return crop(source, region.x, region.y, doc);
+	}
+
+	/**
+	 * Crop a document out of an image, or out of a part of an image. Pixels
+	 * of the document outside the image get the color of the closest pixel of
+	 * the image.
+	 *
+	 * @param source
+	 *            The image, or the part of the image, holding the document
+	 * @param originX
+	 *            The x coordinate of the upper left corner of the source in
+	 *            the coordinates of the document
+	 * @param originY
+	 *            The y coordinate of the upper left corner of the source in
+	 *            the coordinates of the document
+	 * @param doc
+	 *            The document to crop
+	 * @return The cropped document, of type TYPE_BYTE_GRAY for grayscale
+	 *         images and TYPE_INT_RGB otherwise
+	 */
+	public static BufferedImage crop(BufferedImage source, int originX,
+			int originY, Document doc) {
+		int width = doc.getWidth();
+		int height = doc.getHeight();
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid document size: "
+					+ width + " x " + height);
+		boolean gray = source.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		BufferedImage result = new BufferedImage(width, height,
+				gray ? BufferedImage.TYPE_BYTE_GRAY
+						: BufferedImage.TYPE_INT_RGB);
+		WritableRaster resultRaster = result.getRaster();
+
+		if (doc.getRotation() == 0) {
+			Rectangle rect = getRectangle(doc);
+			rect.translate(-originX, -originY);
+			if (new Rectangle(0, 0, source.getWidth(), source.getHeight())
+					.contains(rect)) {
+				copyRectangle(source, rect, resultRaster);
+				return result;
+			}
+		}
+
+		// Moving one pixel along a row, or down a column, of the document
+		// moves (cos, sin), or (-sin, cos), in the source. Pixel centers lie
+		// at half pixels.
+		double angle = Math.toRadians(doc.getRotation());
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		double centerX = doc.getX() - originX - 0.5;
+		double centerY = doc.getY() - originY - 0.5;
+		double startU = 0.5 - width / 2.0;
+		double startV = 0.5 - height / 2.0;
+
+		int sourceWidth = source.getWidth();
+		int sourceHeight = source.getHeight();
+		int[] tile = null;
+		byte[] grayTile = null;
+		int[] row = gray ? null : new int[width];
+		byte[] grayRow = gray ? new byte[width] : null;
+
+		for (int fromRow = 0; fromRow < height; fromRow += TILE_ROWS) {
+			int toRow = Math.min(fromRow + TILE_ROWS, height);
+
+			// The source pixels needed by the tile, from its corners
+			double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+			double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int c = 0; c < 4; c++) {
+				double u = startU + ((c & 1) == 0 ? 0 : width - 1);
+				double v = startV + ((c & 2) == 0 ? fromRow : toRow - 1);
+				double x = centerX + u * cos - v * sin;
+				double y = centerY + u * sin + v * cos;
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+			int tileX = clamp((int) Math.floor(minX), sourceWidth);
+			int tileY = clamp((int) Math.floor(minY), sourceHeight);
+			int tileWidth = clamp((int) Math.floor(maxX) + 1, sourceWidth)
+					- tileX + 1;
+			int tileHeight = clamp((int) Math.floor(maxY) + 1, sourceHeight)
+					- tileY + 1;
+			int tileSize = tileWidth * tileHeight;
+			if (gray) {
+				if (grayTile == null || grayTile.length < tileSize)
+					grayTile = new byte[tileSize];
+				source.getRaster().getDataElements(tileX, tileY, tileWidth,
+						tileHeight, grayTile);
+			} else {
+				if (tile == null || tile.length < tileSize)
+					tile = new int[tileSize];
+				readTile(source, tileX, tileY, tileWidth, tileHeight, tile);
+			}
+
+			for (int j = fromRow; j < toRow; j++) {
+				double v = startV + j;
+				double rowX = centerX + startU * cos - v * sin;
+				double rowY = centerY + startU * sin + v * cos;
+				for (int i = 0; i < width; i++) {
+					double x = rowX + i * cos;
+					double y = rowY + i * sin;
+					int x0 = (int) Math.floor(x);
+					int y0 = (int) Math.floor(y);
+					float ax = (float) (x - x0);
+					float ay = (float) (y - y0);
+					int x1 = clamp(x0 + 1, sourceWidth) - tileX;
+					int y1 = clamp(y0 + 1, sourceHeight) - tileY;
+					x0 = clamp(x0, sourceWidth) - tileX;
+					y0 = clamp(y0, sourceHeight) - tileY;
+					int i00 = y0 * tileWidth + x0, i01 = y0 * tileWidth + x1;
+					int i10 = y1 * tileWidth + x0, i11 = y1 * tileWidth + x1;
+					if (gray) {
+						grayRow[i] = (byte) interpolate(grayTile[i00] & 0xff,
+								grayTile[i01] & 0xff, grayTile[i10] & 0xff,
+								grayTile[i11] & 0xff, ax, ay);
+					} else {
+						int p00 = tile[i00], p01 = tile[i01];
+						int p10 = tile[i10], p11 = tile[i11];
+						int r = interpolate((p00 >> 16) & 0xff,
+								(p01 >> 16) & 0xff, (p10 >> 16) & 0xff,
+								(p11 >> 16) & 0xff, ax, ay);
+						int g = interpolate((p00 >> 8) & 0xff,
+								(p01 >> 8) & 0xff, (p10 >> 8) & 0xff,
+								(p11 >> 8) & 0xff, ax, ay);
+						int b = interpolate(p00 & 0xff, p01 & 0xff,
+								p10 & 0xff, p11 & 0xff, ax, ay);
+						row[i] = (r << 16) | (g << 8) | b;
+					}
+				}
+				resultRaster.setDataElements(0, j, width, 1, gray ? grayRow
+						: row);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The smallest rectangle, in the coordinates of the image, containing the
+	 * document. The margin of two pixels covers the rounding of the corners
+	 * and the neighbours needed by the interpolation.
+	 *
+	 * @param doc
+	 *            The document
+	 * @return The bounds of the document
+	 */
+	public static Rectangle getBounds(Document doc) {
+		Point[] corners = doc.toArray();
+		Rectangle bounds = new Rectangle(corners[0]);
+		for (int i = 1; i < 4; i++) {
+			bounds.add(corners[i]);
+		}
+		bounds.grow(2, 2);
+		return bounds;
+	}
+
+	/**
+	 * The pixels, in the coordinates of the image, covered by a document that
+	 * is not rotated. The rectangle has the corners given by
+	 * {@link Document#toArray()}.
+	 *
+	 * @param doc
+	 *            The document
+	 * @return The rectangle of the document
+	 */
+	public static Rectangle getRectangle(Document doc) {
+		return new Rectangle(doc.getX() - doc.getWidth() / 2, doc.getY()
+				- doc.getHeight() / 2, doc.getWidth(), doc.getHeight());
+	}
+
+	/**
+	 * Copy a rectangle of the source, which must lie inside the source, to
+	 * the result without resampling, a tile of rows at a time
+	 */
+	private static void copyRectangle(BufferedImage source, Rectangle rect,
+			WritableRaster result) {
+		boolean gray = source.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		int rows = Math.min(TILE_ROWS, rect.height);
+		byte[] grayTile = gray ? new byte[rect.width * rows] : null;
+		int[] tile = gray ? null : new int[rect.width * rows];
+		for (int fromRow = 0; fromRow < rect.height; fromRow += rows) {
+			int tileHeight = Math.min(rows, rect.height - fromRow);
+			if (gray) {
+				source.getRaster().getDataElements(rect.x, rect.y + fromRow,
+						rect.width, tileHeight, grayTile);
+				result.setDataElements(0, fromRow, rect.width, tileHeight,
+						grayTile);
+			} else {
+				readTile(source, rect.x, rect.y + fromRow, rect.width,
+						tileHeight, tile);
+				result.setDataElements(0, fromRow, rect.width, tileHeight,
+						tile);
+			}
+		}
+	}
+
+	/**
+	 * Read a rectangle of the source as packed RGB values
+	 */
+	private static void readTile(BufferedImage source, int x, int y,
+			int width, int height, int[] tile) {
+		Raster raster = source.getRaster();
+		switch (source.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+			raster.getDataElements(x, y, width, height, tile);
+			break;
+		case BufferedImage.TYPE_3BYTE_BGR:
+			byte[] line = new byte[3 * width];
+			for (int j = 0; j < height; j++) {
+				raster.getDataElements(x, y + j, width, 1, line);
+				// The elements come in band order, red first
+				for (int i = 0, k = 0; i < width; i++, k += 3) {
+					tile[j * width + i] = ((line[k] & 0xff) << 16)
+							| ((line[k + 1] & 0xff) << 8) | (line[k + 2] & 0xff);
+				}
+			}
+			break;
+		default:
+			source.getRGB(x, y, width, height, tile, 0, width);
+		}
+	}
+
+	private static int interpolate(int p00, int p01, int p10, int p11,
+			float ax, float ay) {
+		float top = p00 + ax * (p01 - p00);
+		float bottom = p10 + ax * (p11 - p10);
+		return (int) (top + ay * (bottom - top) + 0.5f);
+	}
+
+	private static int clamp(int value, int length) {
+		return value < 0 ? 0 : value >= length ? length - 1 : value;
+	}
+}
@@ -48,6 +48,52 @@ public abstract class FileUtilities {
 		return 0;
 	}
 
+	/**
+	 * Print the documents of all batches to file, without consulting the
+	 * application properties.
+	 * 
+	 * @param batch
+	 *            The analyzed batches
+	 * @param printer
+	 *            The printer formatting the documents
+	 * @param outputPath
+	 *            The file that the documents of all batches are written to. If
+	 *            null, the documents of every batch are written to
+	 *            DocCrop_out.txt in the directory of the batch.
+	 * @return The number of printed documents
+	 * @throws IOException
+	 *             If a file could not be written
+	 */
+	public static int printToFile(ImageBatches batch, IDocumentPrinter printer,
+			String outputPath) throws IOException {
+		int printed = 0;
+		ImageBatch[] batches = batch.getBatches();
+		Writer writer = null;
+		try {
+			if (outputPath != null)
+				writer = new BufferedWriter(new FileWriter(outputPath));
+			for (int i = 0; i < batches.length; i++) {
+				if (outputPath == null)
+					writer = new BufferedWriter(new FileWriter(
+							batches[i].getBatchPath() + File.separator
+									+ "DocCrop_out.txt"));
+				Document[] docs = batches[i].getDocuments();
+				for (int j = 0; docs != null && j < docs.length; j++) {
+					writer.write(printer.printDocument(docs[j]));
+					printed++;
+				}
+				if (outputPath == null) {
+					writer.close();
+					writer = null;
+				}
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+		return printed;
+	}
+
 	public static void main(String[] args) {
 
 
@@ -17,6 +17,17 @@ public class ImageBatchSettings {
 	private DocumentBehavior behaviour;
 	private DocumentType type;
 	private String[] fileFilter;
+	private int threads;
+	private int decodeThreads;
+	private int writeThreads;
+	private int queueCapacity;
+	private String cacheFile;
+	private int cacheSize = DocumentCache.DEFAULT_MAX_ENTRIES;
+	private boolean contentHashing;
+	private boolean journaling = true;
+	private boolean streamingCorrection;
+	private boolean coarseToFine;
+	private boolean speculativeRetries;
 
 	public ImageBatchSettings() {
 		this.paddingHeight = 0;
@@ -24,6 +35,9 @@ public class ImageBatchSettings {
 		this.behaviour = DocumentBehavior.SIMPLE;
 		this.type = DocumentType.SINGLE_PAGE;
 		this.fileFilter = new String[] {".png",".jpg","jpeg",".tif"};
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.decodeThreads = 2;
+		this.writeThreads = 1;
 	}
 	public ImageBatchSettings(int paddingWidth,int paddingHeight, DocumentBehavior behaviour, DocumentType type, String[] fileFilter) {
 		this.paddingHeight = paddingHeight;
@@ -31,6 +45,9 @@ public class ImageBatchSettings {
 		this.behaviour = behaviour;
 		this.type = type;
 		this.fileFilter = fileFilter;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.decodeThreads = 2;
+		this.writeThreads = 1;
 	}
 	
 	public DocumentBehavior getBehaviour() {
@@ -73,5 +90,233 @@ public class ImageBatchSettings {
 	public void setFileFilter(String[] fileFilter) {
 		this.fileFilter = fileFilter;
 	}
-	
+
+	/**
+	 * Get the number of worker threads used when analyzing the batches
+	 * 
+	 * @return The number of worker threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of worker threads used when analyzing the batches. The
+	 * default is the number of available processors.
+	 * 
+	 * @param threads
+	 *            The number of worker threads (>= 1)
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException(
+					"The number of threads must be >= 1");
+		this.threads = threads;
+	}
+
+	/**
+	 * Get the number of threads reading and decoding image files ahead of the
+	 * analysis
+	 * 
+	 * @return The number of decoder threads
+	 */
+	public int getDecodeThreads() {
+		return decodeThreads;
+	}
+
+	/**
+	 * Set the number of threads reading and decoding image files ahead of the
+	 * analysis. More than one decoder helps on slow disks and network shares,
+	 * where reads can be issued while earlier files are being analyzed. The
+	 * default is 2.
+	 * 
+	 * @param decodeThreads
+	 *            The number of decoder threads (>= 1)
+	 */
+	public void setDecodeThreads(int decodeThreads) {
+		if (decodeThreads < 1)
+			throw new IllegalArgumentException(
+					"The number of decoder threads must be >= 1");
+		this.decodeThreads = decodeThreads;
+	}
+
+	/**
+	 * Get the number of threads writing the output of the identified documents
+	 * 
+	 * @return The number of writer threads
+	 */
+	public int getWriteThreads() {
+		return writeThreads;
+	}
+
+	/**
+	 * Set the number of threads writing the output of the identified
+	 * documents. The default is 1.
+	 * 
+	 * @param writeThreads
+	 *            The number of writer threads (>= 1)
+	 */
+	public void setWriteThreads(int writeThreads) {
+		if (writeThreads < 1)
+			throw new IllegalArgumentException(
+					"The number of writer threads must be >= 1");
+		this.writeThreads = writeThreads;
+	}
+
+	/**
+	 * Get the maximum number of files that are decoded or analyzed, but not
+	 * yet collected, at any time. This is also the maximum number of
+	 * documents waiting to be written. Unless set, the capacity is twice the
+	 * number of analysis threads plus the number of decoder threads.
+	 * 
+	 * @return The capacity of the pipeline
+	 */
+	public int getQueueCapacity() {
+		if (queueCapacity > 0)
+			return queueCapacity;
+		return 2 * threads + decodeThreads;
+	}
+
+	/**
+	 * Set the maximum number of files that are decoded or analyzed, but not
+	 * yet collected, at any time. Every such file holds a decoded image, so
+	 * the capacity bounds the memory used by the pipeline.
+	 * 
+	 * @param queueCapacity
+	 *            The capacity of the pipeline (>= 1), or 0 for the default
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 0)
+			throw new IllegalArgumentException(
+					"The queue capacity must be >= 0");
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Get the file of the cache of identified documents
+	 * 
+	 * @return The path to the cache file, or null if no cache is used
+	 */
+	public String getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Set the file of the cache of identified documents, see
+	 * {@link DocumentCache}. Files found in the cache are not identified
+	 * again. The default is no cache.
+	 * 
+	 * @param cacheFile
+	 *            The path to the cache file, or null for no cache
+	 */
+	public void setCacheFile(String cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Set the maximum number of documents in the cache. When full, the least
+	 * recently used documents are evicted.
+	 * 
+	 * @param cacheSize
+	 *            The size of the cache (>= 1)
+	 */
+	public void setCacheSize(int cacheSize) {
+		if (cacheSize < 1)
+			throw new IllegalArgumentException(
+					"The size of the cache must be >= 1");
+		this.cacheSize = cacheSize;
+	}
+
+	public boolean isContentHashing() {
+		return contentHashing;
+	}
+
+	/**
+	 * Set whether the contents of the image files should be hashed to find
+	 * them in the cache. Otherwise, which is the default, a file is
+	 * recognized by its path, size and modification time.
+	 * 
+	 * @param contentHashing
+	 *            True to hash the contents of the files
+	 */
+	public void setContentHashing(boolean contentHashing) {
+		this.contentHashing = contentHashing;
+	}
+
+	public boolean isJournaling() {
+		return journaling;
+	}
+
+	/**
+	 * Set whether the results of a batch should be journaled while the batch
+	 * is analyzed, so that an aborted analysis can be resumed, see
+	 * <code>BatchJournal</code>. The journal is written to the directory of
+	 * the batch, and skipped for directories that cannot be written. The
+	 * default is true.
+	 * 
+	 * @param journaling
+	 *            True to journal the results
+	 */
+	public void setJournaling(boolean journaling) {
+		this.journaling = journaling;
+	}
+
+	public boolean isStreamingCorrection() {
+		return streamingCorrection;
+	}
+
+	/**
+	 * Set whether the documents of a batch should be corrected while the
+	 * batch is analyzed, so that they can be written before the whole batch
+	 * is identified, see <code>StreamingDocumentCorrector</code>. Only
+	 * applies to batches with COMPLEX behaviour, the positions of SIMPLE
+	 * batches are fitted to the whole batch. The dimensions of the first
+	 * documents may then differ from the ones of the correction of the whole
+	 * batch. The default is false.
+	 * 
+	 * @param streamingCorrection
+	 *            True to correct the documents while analyzing
+	 */
+	public void setStreamingCorrection(boolean streamingCorrection) {
+		this.streamingCorrection = streamingCorrection;
+	}
+
+	public boolean isCoarseToFine() {
+		return coarseToFine;
+	}
+
+	/**
+	 * Set whether the documents should first be looked for in a coarse image,
+	 * and only be identified at full size when the coarse result is not
+	 * trusted, see <code>DocumentIdentifier.setCoarseToFine</code>. The
+	 * default is false.
+	 * 
+	 * @param coarseToFine
+	 *            True for coarse-to-fine identification
+	 */
+	public void setCoarseToFine(boolean coarseToFine) {
+		this.coarseToFine = coarseToFine;
+	}
+
+	public boolean isSpeculativeRetries() {
+		return speculativeRetries;
+	}
+
+	/**
+	 * Set whether the retries of images whose document is not found at the
+	 * first attempt should be run in parallel, see
+	 * <code>DocumentIdentifier.setSpeculativeExecutor</code>. Half of the
+	 * worker threads then run the retries instead of identifying files, so
+	 * that the processors are not oversubscribed. The default is false.
+	 * 
+	 * @param speculativeRetries
+	 *            True for parallel retries
+	 */
+	public void setSpeculativeRetries(boolean speculativeRetries) {
+		this.speculativeRetries = speculativeRetries;
+	}
 }
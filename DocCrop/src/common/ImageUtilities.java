@@ -3,15 +3,20 @@ package common;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -40,11 +45,74 @@ public final class ImageUtilities {
 	 * @throws IOException
 	 */
 	public static BufferedImage readImage(String imagePath) throws IOException {
+		return readImage(imagePath, 1);
+	}
+
+	/**
+	 * Read an image from file at a reduced resolution. Only every
+	 * <code>subsampling</code>:th pixel of every <code>subsampling</code>:th
+	 * row is decoded, so the skipped pixels never take up any memory.
+	 * 
+	 * @param imagePath
+	 *            the relative path to the image
+	 * @param subsampling
+	 *            the distance between the decoded pixels, 1 reads the full
+	 *            image
+	 * @return the read image, of size ceil(width / subsampling) x ceil(height
+	 *         / subsampling)
+	 * @throws IOException
+	 */
+	public static BufferedImage readImage(String imagePath, int subsampling)
+			throws IOException {
+		if (subsampling < 1)
+			throw new IllegalArgumentException(
+					"Subsampling must be >= 1: " + subsampling);
+		return readImage(imagePath, subsampling, null);
+	}
+
+	/**
+	 * Read a part of an image from file. Only the pixels inside the region
+	 * are kept in memory, which makes it possible to get a small part of a
+	 * large image without ever holding the whole image.
+	 * 
+	 * @param imagePath
+	 *            the relative path to the image
+	 * @param region
+	 *            the part of the image to read, which must lie inside the
+	 *            image
+	 * @return the read part of the image, with the upper left corner of the
+	 *         region at (0, 0)
+	 * @throws IOException
+	 */
+	public static BufferedImage readImage(String imagePath, Rectangle region)
+			throws IOException {
+		if (region.isEmpty())
+			throw new IllegalArgumentException("Empty region: " + region);
+		return readImage(imagePath, 1, region);
+	}
+
+	private static BufferedImage readImage(String imagePath,
+			int subsampling, Rectangle region) throws IOException {
 		BufferedImage buffImg = null;
 		BufferedImage tempImg = null;
 
-		File f = new File(imagePath);
-		buffImg = ImageIO.read(f);
+		ImageInputStream input = openImage(imagePath);
+		try {
+			ImageReader reader = getReader(imagePath, input);
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				if (subsampling > 1)
+					param.setSourceSubsampling(subsampling, subsampling, 0,
+							0);
+				if (region != null)
+					param.setSourceRegion(region);
+				buffImg = reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
 		// Temporary fix for reading TIF files. For some reason the image
 		// type is unknown, and this code cast the image type to
 		// TYPE_INT_RGB
@@ -57,6 +125,81 @@ public final class ImageUtilities {
 		return buffImg;
 	}
 
+	/**
+	 * Write an image to file
+	 * 
+	 * @param img
+	 *            the image to write
+	 * @param format
+	 *            the informal name of the format, e.g. "png" or "jpg"
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the image could not be written, or if there is no writer
+	 *             for the format
+	 */
+	public static void writeImage(BufferedImage img, String format, File file)
+			throws IOException {
+		if (!ImageIO.write(img, format, file))
+			throw new IOException("Unsupported image format: " + format);
+	}
+
+	/**
+	 * Check if there is a writer for the format
+	 * 
+	 * @param format
+	 *            the informal name of the format, e.g. "png" or "jpg"
+	 * @return true if images can be written in the format
+	 */
+	public static boolean isWritableFormat(String format) {
+		return ImageIO.getImageWritersByFormatName(format).hasNext();
+	}
+
+	/**
+	 * Read the size of an image from file, without decoding the image
+	 * 
+	 * @param imagePath
+	 *            the relative path to the image
+	 * @return the width and height of the image
+	 * @throws IOException
+	 */
+	public static Dimension getImageDimension(String imagePath)
+			throws IOException {
+		ImageInputStream input = openImage(imagePath);
+		try {
+			ImageReader reader = getReader(imagePath, input);
+			try {
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private static ImageInputStream openImage(String imagePath)
+			throws IOException {
+		File f = new File(imagePath);
+		if (!f.canRead())
+			throw new FileNotFoundException("Can't read input file: "
+					+ imagePath);
+		ImageInputStream input = ImageIO.createImageInputStream(f);
+		if (input == null)
+			throw new IOException("Can't open input file: " + imagePath);
+		return input;
+	}
+
+	private static ImageReader getReader(String imagePath,
+			ImageInputStream input) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext())
+			throw new IOException("Unsupported image format: " + imagePath);
+		ImageReader reader = readers.next();
+		reader.setInput(input, true, true);
+		return reader;
+	}
+
 	/**
 	 * Convert {@link java.awt.image.BufferedImage} to a grayscale counterpart
 	 * 
@@ -100,28 +243,30 @@ public final class ImageUtilities {
 
 	/**
 	 * Scale the image. The image is scaled by multiplying the height and the
-	 * width of the image by the scale factor
+	 * width of the image by the scale factor. The pixels are area averaged,
+	 * see {@link AreaAveragingScaler}.
 	 * 
 	 * @param img
 	 *            The image to scale
 	 * @param scale
 	 *            The scale factor, scale > 0. Scale < 1 yields a smaller image.
-	 * @return The scaled image
+	 * @return The scaled image, of the same type as the input image
 	 */
 	public static BufferedImage scaleImage(BufferedImage img, double scale) {
-		if (scale <= 0)
-			throw (new IllegalArgumentException(
-					"Input parameter scale must be > 0: " + scale));
-		int w = img.getWidth();
-		int h = img.getHeight();
+		AreaAveragingScaler scaler = new AreaAveragingScaler();
+		scaler.scale(img, scale);
+
 		int imgType = img.getType();
-		Image scaledImg = img.getScaledInstance((int) (w * scale),
-				(int) (h * scale), Image.SCALE_DEFAULT);
-		BufferedImage scaledBuffImg = new BufferedImage((int) (w * scale),
-				(int) (h * scale), imgType);
-		Graphics g = scaledBuffImg.getGraphics();
-		g.drawImage(scaledImg, 0, 0, null);
-		g.dispose();
+		BufferedImage scaledBuffImg = scaler.getColorImage();
+		if (scaledBuffImg.getType() != imgType) {
+			BufferedImage converted = new BufferedImage(
+					scaledBuffImg.getWidth(), scaledBuffImg.getHeight(),
+					imgType);
+			Graphics g = converted.getGraphics();
+			g.drawImage(scaledBuffImg, 0, 0, null);
+			g.dispose();
+			scaledBuffImg = converted;
+		}
 		return scaledBuffImg;
 	}
 
@@ -4,13 +4,11 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Vector;
 
 import javax.swing.JFrame;
 
-import org.ejml.ops.CommonOps;
-import org.ejml.simple.SimpleMatrix;
-
 /**
  * Utility class for {@link Point} providing functions as collinear point
  * detection, relative point positioning, convex hull and minimal enclosing
@@ -32,46 +30,6 @@ public class PointUtilities {
 	private PointUtilities() {
 	}
 
-	private final static Vector<Point> removeCollinearPoints(
-			Vector<Point> points) {
-		for (int i = 0; i < points.size(); i++) {
-			for (int j = i + 1; j < points.size(); j++) {
-				for (int k = j + 1; k < points.size(); k++) {
-					Point[] p = { points.get(i), points.get(j), points.get(k) };
-
-					int collinear = collinear(p[0], p[1], p[2]);
-
-					// If not collinear, continue
-					if (collinear == -1)
-						continue;
-					else {
-						points.remove(p[collinear]);
-						// Check which point that was removed
-						switch (collinear) {
-						case 0:
-							// If "i" point was removed continue at the "j loop"
-							j = i + 1;
-							k = j;
-							break;
-						case 1:
-							// If "j" point was removed continue at the "k loop"
-							k = j;
-							break;
-						case 2:
-							// If "k" point was removed continue with the same k
-							// value
-							k--;
-						}
-
-
-					}
-				}
-			}
-		}
-
-		return points;
-	}
-
 	/**
 	 * Check if three points are collinear
 	 * 
@@ -119,42 +77,125 @@ public class PointUtilities {
 	 * @return The convex hull
 	 */
 	public static Vector<Point> convexHull(Vector<Point> points) {
-		points = removeCollinearPoints(points);
-
 		if (points == null || points.size() == 0) {
 			return null;
 		}
-		// Find the leftmost point
-		int min = Integer.MAX_VALUE;
-		int minIndex = 0;
-		for (int i = 0; i < points.size(); i++) {
-			Point point = points.get(i);
-			if (point.x < min) {
-				min = point.x;
-				minIndex = i;
-			}
+		int count = points.size();
+		int[] x = new int[count];
+		int[] y = new int[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = points.get(i).x;
+			y[i] = points.get(i).y;
+		}
+		int[] hullX = new int[count];
+		int[] hullY = new int[count];
+		int size = convexHull(x, y, count, hullX, hullY);
+		Vector<Point> hull = new Vector<Point>(size);
+		for (int i = 0; i < size; i++) {
+			hull.add(new Point(hullX[i], hullY[i]));
+		}
+		return hull;
+	}
+
+	/**
+	 * Compute a convex hull that contains all supplied points, given as
+	 * parallel coordinate arrays. The hull points are stored in clockwise
+	 * fashion (on screen, where the y axis points down), starting with the
+	 * leftmost point. No three hull points are collinear, and no point occurs
+	 * twice.
+	 * 
+	 * The hull is found by Andrew's monotone chain: the points are sorted by
+	 * their coordinates, packed into one long each, and the lower and the
+	 * upper half of the hull are built in one pass each, dropping every point
+	 * that does not make a strict turn. That is O(n log n) for n points.
+	 * 
+	 * @param x
+	 *            The x coordinates of the points
+	 * @param y
+	 *            The y coordinates of the points
+	 * @param count
+	 *            The number of points, the arrays may be longer
+	 * @param hullX
+	 *            Receives the x coordinates of the hull, room for count
+	 *            points
+	 * @param hullY
+	 *            Receives the y coordinates of the hull, room for count
+	 *            points
+	 * @return The number of hull points
+	 */
+	public static int convexHull(int[] x, int[] y, int count, int[] hullX,
+			int[] hullY) {
+		if (count == 0)
+			return 0;
+		// Sort by x, then by y, and drop the duplicates
+		long[] points = new long[count];
+		for (int i = 0; i < count; i++) {
+			points[i] = pack(x[i], y[i]);
 		}
-		// Start with the leftmost point
-		Point pointOnHull = points.get(minIndex);
-
-		Vector<Point> hull = new Vector<Point>();
-		Point endPoint = null;
-		do {
-			hull.add(pointOnHull);
-			endPoint = points.get(0);
-			// Find the point that has no more points to the left of the line
-			// drawn from the previous point (pointOnHull) and itself
-			for (int j = 1; j < points.size(); j++) {
-				if (isOnRight(pointOnHull, endPoint, points.get(j))) {
-					endPoint = points.get(j);
-				}
+		Arrays.sort(points);
+		int unique = 1;
+		for (int i = 1; i < count; i++) {
+			if (points[i] != points[unique - 1])
+				points[unique++] = points[i];
+		}
+		if (unique <= 2) {
+			for (int i = 0; i < unique; i++) {
+				hullX[i] = unpackX(points[i]);
+				hullY[i] = unpackY(points[i]);
 			}
-			pointOnHull = endPoint;
-			// Continue until we are back to the starting point (A 360 degree
-			// right turn has been made)
-		} while (!endPoint.equals(hull.get(0)));
+			return unique;
+		}
 
-		return hull;
+		long[] hull = new long[2 * unique];
+		int size = 0;
+		// Lower half, from the leftmost to the rightmost point
+		for (int i = 0; i < unique; i++) {
+			while (size >= 2
+					&& turn(hull[size - 2], hull[size - 1], points[i]) <= 0)
+				size--;
+			hull[size++] = points[i];
+		}
+		// Upper half, back to the leftmost point
+		int lower = size + 1;
+		for (int i = unique - 2; i >= 0; i--) {
+			while (size >= lower
+					&& turn(hull[size - 2], hull[size - 1], points[i]) <= 0)
+				size--;
+			hull[size++] = points[i];
+		}
+		// The leftmost point ends both halves
+		size--;
+
+		for (int i = 0; i < size; i++) {
+			hullX[i] = unpackX(hull[i]);
+			hullY[i] = unpackY(hull[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * Pack a point into a long, ordered by x and then by y
+	 */
+	private static long pack(int x, int y) {
+		return ((long) x << 32) | ((long) y - Integer.MIN_VALUE);
+	}
+
+	private static int unpackX(long point) {
+		return (int) (point >> 32);
+	}
+
+	private static int unpackY(long point) {
+		return (int) ((point & 0xffffffffL) + Integer.MIN_VALUE);
+	}
+
+	/**
+	 * The cross product of (a - o) and (b - o), positive if o, a, b turn
+	 * clockwise on screen and zero if they are collinear
+	 */
+	private static long turn(long o, long a, long b) {
+		long ox = unpackX(o), oy = unpackY(o);
+		return (unpackX(a) - ox) * (unpackY(b) - oy) - (unpackY(a) - oy)
+				* (unpackX(b) - ox);
 	}
 
 	/**
@@ -199,133 +240,165 @@ public class PointUtilities {
 	 */
 	public static Point[] minimalEnclosingRectangle(Vector<Point> points,
 			int metric) {
-		// Rotation matrix
-		SimpleMatrix rot = new SimpleMatrix(2, 2);
-		Point[] rect = new Point[5];
-		Vector<Point> hull;
-		// Remove unnecessary points, speeding up the algorithm.
 		if (points == null || points.size() == 0) {
 			return null;
-		} else {
-			hull = convexHull(points);
 		}
-		// Create a matrix with containing all points
-		double[][] xy = new double[hull.size()][2];
-		for (int i = 0; i < hull.size(); i++) {
-			xy[i][0] = hull.get(i).x;
-			xy[i][1] = hull.get(i).y;
+		int count = points.size();
+		int[] x = new int[count];
+		int[] y = new int[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = points.get(i).x;
+			y[i] = points.get(i).y;
 		}
-		SimpleMatrix XY = new SimpleMatrix(xy);
+		return minimalEnclosingRectangle(x, y, count, metric);
+	}
 
-		int numPoints = hull.size();
+	/**
+	 * Compute the minimal,with respect to the given metric, rectangle
+	 * containing all the given points, given as parallel coordinate arrays.
+	 * The enclosing rectangle is returned as a 5 element Point array, with
+	 * the lower left corner as first value and following corners in clockwise
+	 * fashion
+	 * 
+	 * @param x
+	 *            The x coordinates of the points to include
+	 * @param y
+	 *            The y coordinates of the points to include
+	 * @param count
+	 *            The number of points, the arrays may be longer
+	 * @param metric
+	 *            Metric that should be used for minimization, either area or
+	 *            perimeter can be used. Use METRIC_AREA or METRIC_PERIMETER.
+	 * @return The minimal enclosing rectangle, or null if there are no points
+	 */
+	public static Point[] minimalEnclosingRectangle(int[] x, int[] y,
+			int count, int metric) {
+		if (count == 0) {
+			return null;
+		}
+		// Remove unnecessary points, speeding up the algorithm.
+		int[] hullX = new int[count];
+		int[] hullY = new int[count];
+		int numPoints = convexHull(x, y, count, hullX, hullY);
+		Point[] rect = new Point[5];
 
 		// Handle simple cases
 		switch (numPoints) {
-		case 0:
-			return null;
 		case 1:
 			for (int i = 0; i < 5; i++) {
-				rect[i] = hull.get(0);
+				rect[i] = new Point(hullX[0], hullY[0]);
 			}
 			return rect;
 		case 2:
-			rect[0] = hull.get(0);
-			rect[1] = hull.get(1);
-			rect[2] = hull.get(1);
-			rect[3] = hull.get(0);
-			rect[4] = hull.get(0);
+			rect[0] = new Point(hullX[0], hullY[0]);
+			rect[1] = new Point(hullX[1], hullY[1]);
+			rect[2] = new Point(hullX[1], hullY[1]);
+			rect[3] = new Point(hullX[0], hullY[0]);
+			rect[4] = new Point(hullX[0], hullY[0]);
 			return rect;
 		}
 
+		/*
+		 * The minimal rectangle has a side on one of the hull edges. Rotating
+		 * calipers: for every edge, the hull points furthest along the edge,
+		 * furthest from it and furthest back along it are found by moving on
+		 * from the points of the previous edge, so all edges are examined in
+		 * O(numPoints) in total.
+		 */
 		double minMetric = Double.MAX_VALUE;
-		// Compute all angles for each edge in the convex hull
-		Vector<Double> angles = edgeAngles(hull);
-		for (int i = 0; i < angles.size(); i++) {
-			double mI = Double.MAX_VALUE;
-			double aI = Double.MAX_VALUE;
-			double pI = Double.MAX_VALUE;
-			// Compute the rotation matrix for the current angle, and create a
-			// matrix containing all points
-			// rotated with the respect to the origin
-			rot = rotationMatrix(angles.get(i));
-			SimpleMatrix XYRot = XY.mult(rot);
-
-			// Get minimum and maximum x and y values
-			double maxX = CommonOps.elementMax(XYRot.extractVector(false, 0)
-					.getMatrix());
-			double maxY = CommonOps.elementMax(XYRot.extractVector(false, 1)
-					.getMatrix());
-			double minX = CommonOps.elementMin(XYRot.extractVector(false, 0)
-					.getMatrix());
-			double minY = CommonOps.elementMin(XYRot.extractVector(false, 1)
-					.getMatrix());
+		int best = -1;
+		int right = 1, top = 1, left = 1;
+		for (int i = 0; i < numPoints; i++) {
+			int next = (i + 1) % numPoints;
+			double length = Math.hypot(hullX[next] - hullX[i], hullY[next]
+					- hullY[i]);
+			double ux = (hullX[next] - hullX[i]) / length;
+			double uy = (hullY[next] - hullY[i]) / length;
+
+			// The calipers follow the hull from the end of the edge
+			right = Math.max(right, i + 1);
+			while (along(hullX, hullY, numPoints, right + 1, i, ux, uy) > along(
+					hullX, hullY, numPoints, right, i, ux, uy))
+				right++;
+			top = Math.max(top, right);
+			while (across(hullX, hullY, numPoints, top + 1, i, ux, uy) > across(
+					hullX, hullY, numPoints, top, i, ux, uy))
+				top++;
+			left = Math.max(left, top);
+			while (along(hullX, hullY, numPoints, left + 1, i, ux, uy) < along(
+					hullX, hullY, numPoints, left, i, ux, uy))
+				left++;
+
+			double width = along(hullX, hullY, numPoints, right, i, ux, uy)
+					- along(hullX, hullY, numPoints, left, i, ux, uy);
+			double height = across(hullX, hullY, numPoints, top, i, ux, uy);
 
 			// Compute metric values
-			aI = (maxX - minX) * (maxY - minY);
-			pI = 2 * ((maxX - minX) + (maxY - minY));
-
+			double mI;
 			if (metric == METRIC_PERIMETER) {
-				mI = pI;
+				mI = 2 * (width + height);
 			} else {
-				mI = aI;
+				mI = width * height;
 			}
 
 			// Check if we have a new minimum
 			if (mI < minMetric) {
 				minMetric = mI;
-
-				// Create a matrix containing all minimum and maximum x and y
-				// values
-				SimpleMatrix R = new SimpleMatrix(5, 2);
-				R.set(0, 0, minX);
-				R.set(0, 1, minY);
-				R.set(1, 0, maxX);
-				R.set(1, 1, minY);
-				R.set(2, 0, maxX);
-				R.set(2, 1, maxY);
-				R.set(3, 0, minX);
-				R.set(3, 1, maxY);
-				R.set(4, 0, minX);
-				R.set(4, 1, minY);
-
-				// Create minimum enclosing rectangle by doing reversing the
-				// rotation
-				SimpleMatrix rectM = R.mult(rot.transpose());
-
-				// Transform into vector form
-				for (int j = 0; j < 5; j++) {
-					rect[j] = new Point((int) rectM.get(j, 0), (int) rectM.get(
-							j, 1));
-				}
+				best = i;
 			}
+		}
+
+		// Rotate the points so that the best edge is parallel to the closest
+		// axis, the sides of the rectangle are the minimum and maximum x and
+		// y values
+		int next = (best + 1) % numPoints;
+		double angle = Math.atan2(hullY[next] - hullY[best], hullX[next]
+				- hullX[best]);
+		angle -= Math.PI / 2 * Math.floor((angle + Math.PI / 4) / (Math.PI / 2));
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int k = 0; k < numPoints; k++) {
+			double px = hullX[k], py = hullY[k];
+			double rotX = px * cos + py * sin;
+			double rotY = py * cos - px * sin;
+			minX = Math.min(minX, rotX);
+			maxX = Math.max(maxX, rotX);
+			minY = Math.min(minY, rotY);
+			maxY = Math.max(maxY, rotY);
+		}
 
+		// Create minimum enclosing rectangle by reversing the rotation,
+		// starting in the lower left corner (the y axis points down)
+		double[] rectX = { minX, minX, maxX, maxX, minX };
+		double[] rectY = { maxY, minY, minY, maxY, maxY };
+		for (int j = 0; j < 5; j++) {
+			rect[j] = new Point((int) (rectX[j] * cos - rectY[j] * sin),
+					(int) (rectX[j] * sin + rectY[j] * cos));
 		}
 		return rect;
 	}
 
-	// Compute rotation matrix
-	private static final SimpleMatrix rotationMatrix(double angle) {
-		SimpleMatrix M = new SimpleMatrix(2, 2);
-		M.set(0, 0, Math.cos(angle));
-		M.set(0, 1, Math.sin(angle));
-		M.set(1, 0, -Math.sin(angle));
-		M.set(1, 1, Math.cos(angle));
-		return M;
+	/**
+	 * The distance of hull point k, counted cyclically, from hull point
+	 * origin in the direction (ux, uy)
+	 */
+	private static double along(int[] x, int[] y, int count, int k,
+			int origin, double ux, double uy) {
+		int point = k % count;
+		return (x[point] - x[origin]) * ux + (y[point] - y[origin]) * uy;
 	}
 
-	// Compute edge angles for a number of subsequent points
-	private static final Vector<Double> edgeAngles(Vector<Point> points) {
-		Vector<Double> angles = new Vector<Double>();
-		for (int i = 0; i < points.size() - 1; i++) {
-
-			double angle = Math.atan2(points.get(i + 1).y - points.get(i).y,
-					points.get(i + 1).x - points.get(i).x) % (Math.PI / 2);
-
-			if (!angles.contains(new Double(angle))) {
-				angles.add(angle);
-			}
-		}
-		return angles;
+	/**
+	 * The distance of hull point k, counted cyclically, from the line through
+	 * hull point origin in the direction (ux, uy)
+	 */
+	private static double across(int[] x, int[] y, int count, int k,
+			int origin, double ux, double uy) {
+		int point = k % count;
+		return Math.abs((y[point] - y[origin]) * ux - (x[point] - x[origin])
+				* uy);
 	}
 
 	public static void main(String[] args) {
@@ -2,14 +2,14 @@ package imageanalysis;
 
 import imageanalysis.canny.CannyEdgeDetector;
 import imageanalysis.hough.HoughData;
-import imageanalysis.hough.HoughLine;
+import imageanalysis.hough.HoughTransform;
 import imageanalysis.hough.HoughUtilities;
-import imageanalysis.hough.Intersection;
 import imageanalysis.morphology.Closing;
 import imageanalysis.morphology.Dilation;
 import imageanalysis.morphology.Erosion;
 import imageanalysis.morphology.MorphologicalOperation;
 import imageanalysis.morphology.MorphologicalOperation.STRUCTURING_ELEMENT_SHAPE;
+import imageanalysis.morphology.MorphologyBuffers;
 import imageanalysis.morphology.None;
 import imageanalysis.morphology.Opening;
 
@@ -21,12 +21,18 @@ import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.SwingUtilities;
 
+import common.AreaAveragingScaler;
 import common.Document;
 import common.Document.DocumentType;
 import common.ImageUtilities;
@@ -58,6 +64,10 @@ public class DocumentIdentifier {
 	private DocumentType docType;
 	private BufferedImage processImg;
 	private BufferedImage img;
+	// The size of the image file, and how much the loaded image is reduced
+	private int imageWidth, imageHeight;
+	private int subsampling = 1;
+	private boolean subsampledLoading = true;
 	private Document document;
 	private double scaleFactor;
 	private MorphologicalOperation morphOp;
@@ -73,9 +83,21 @@ public class DocumentIdentifier {
 	private final int MAX_LINES_FOUND = 50;
 	private int MAX_NUM_TRIES = 3;
 	private int imageProcessSize = 600;
+	private int coarseProcessSize = 200;
+	private boolean coarseToFine = false;
+	// Runs the retries in parallel if set, see setSpeculativeExecutor
+	private ExecutorService speculator;
 	private int lineIterations = 5;
 	private int colorThreshold = 10;
 	private int minimalDocumentArea;
+	private boolean parallelHough = false;
+	private AreaAveragingScaler scaler = new AreaAveragingScaler();
+	// Hough transform reused between identifications of images with the same
+	// size, and a copy of the edges that were last voted for in it
+	private HoughTransform houghTransform;
+	private int[] votedEdges;
+	// Working memory of the morphological operations, reused between tries
+	private MorphologyBuffers morphBuffers = new MorphologyBuffers();
 	private PropertyChangeSupport notifier = new PropertyChangeSupport(this);
 
 	public DocumentIdentifier() {
@@ -100,16 +122,43 @@ public class DocumentIdentifier {
 	}
 
 	/**
-	 * Load the image into the <code>documentIdentifier</code>
+	 * Load the image into the <code>documentIdentifier</code>. Unless
+	 * subsampled loading has been turned off, the image is decoded at a
+	 * reduced resolution that is still at least twice the process size, since
+	 * that is all the identification needs. The identified document is always
+	 * given in the coordinates of the full image.
 	 * 
-	 * @return A copy of the image loaded
+	 * @return The image loaded, possibly at a reduced resolution
 	 * @throws IOException
 	 *             If an error occurs during re
 	 */
 	public BufferedImage load() throws IOException {
-		img = ImageUtilities.readImage(filePath);
+		Dimension size = ImageUtilities.getImageDimension(filePath);
+		imageWidth = size.width;
+		imageHeight = size.height;
+		subsampling = 1;
+		if (subsampledLoading)
+			subsampling = Math.max(1, Math.max(imageWidth, imageHeight)
+					/ (2 * imageProcessSize));
+		img = ImageUtilities.readImage(filePath, subsampling);
 		firePropertyChange(IMAGE_READ, null, img);
-		return ImageUtilities.copyImage(img);
+		return img;
+	}
+
+	/**
+	 * Get the image at full resolution. If the image was loaded at a reduced
+	 * resolution, it is read again from file. The full image is not kept by
+	 * the <code>DocumentIdentifier</code>, so it should only be asked for
+	 * when it is really needed, e.g. when the document is cropped out of it.
+	 * 
+	 * @return The image at full resolution
+	 * @throws IOException
+	 *             If the image could not be read
+	 */
+	public BufferedImage getFullImage() throws IOException {
+		if (img != null && subsampling == 1)
+			return img;
+		return ImageUtilities.readImage(filePath);
 	}
 
 	/**
@@ -117,184 +166,69 @@ public class DocumentIdentifier {
 	 * fires <code>propertyChangeEvents</code> to indicate in which state the
 	 * identification process currently is.
 	 * 
+	 * If coarse-to-fine identification is turned on, the document is first
+	 * looked for in an image of the coarse process size, and the result is
+	 * kept if it passes the confidence check, see
+	 * {@link #setCoarseToFine(boolean)}. Otherwise the document is identified
+	 * at the full process size.
+	 * 
+	 * If the first attempt at the full process size is not accepted, and a
+	 * speculative executor is set, the retries are run in parallel instead of
+	 * one after the other, see
+	 * {@link #setSpeculativeExecutor(ExecutorService)}.
+	 * 
 	 * @return The identified document
 	 */
 	public Document identify() {
-		BufferedImage sourceImg;
-		// Variables for identification stop criteria
-		int tryNumber = 0;
-		boolean tryAgain = true;
-
-		// Compute which factor the image should be scaled with
-		int originalMax = Math.max(img.getHeight(), img.getWidth());
-		scaleFactor = (double) imageProcessSize / originalMax;
+		// Compute which factor the image should be scaled with. The factor
+		// relates to the full image, also when a reduced image was loaded
+		int originalMax = Math.max(imageHeight, imageWidth);
+
+		if (coarseToFine && coarseProcessSize < imageProcessSize) {
+			double threshold = lineThreshold[HIGH];
+			BufferedImage coarseImg = scale((double) coarseProcessSize
+					/ originalMax);
+			if (coarseImg == null)
+				return null;
+			Attempt coarse = attempt(coarseImg);
+			if (coarse == null)
+				return null;
+			if (isConfident(coarse))
+				return document;
+			// Start the full identification from the same settings
+			lineThreshold[HIGH] = threshold;
+		}
 
-		// Scale the image for faster processing
-		sourceImg = ImageUtilities.scaleImage(img, scaleFactor);
-		// /////////////////Break point///////////////////////
-		if (Thread.interrupted())
+		BufferedImage original = scale((double) imageProcessSize
+				/ originalMax);
+		if (original == null)
 			return null;
-		// ///////////////////////////////////////////////////
-		processImg = ImageUtilities.copyImage(sourceImg);
-		// /////////////////Break point///////////////////////
-		if (Thread.interrupted())
-			return null;
-		// ///////////////////////////////////////////////////
 
-		minimalDocumentArea = processImg.getHeight() * processImg.getWidth()
-				/ 4;
-		firePropertyChange(IMAGE_SCALED, null, sourceImg);
-
-		// Convert image to grayscale, needed for further processing
-		sourceImg = ImageUtilities.convertToGrayScale(sourceImg);
-		// /////////////////Break point///////////////////////
-		if (Thread.interrupted())
-			return null;
-		// ///////////////////////////////////////////////////
-		firePropertyChange(IMAGE_GRAYSCALED, null, sourceImg);
-		BufferedImage original = ImageUtilities.copyImage(sourceImg);
-		// /////////////////Break point///////////////////////
-		if (Thread.interrupted())
-			return null;
-		// ///////////////////////////////////////////////////
+		// Variables for identification stop criteria
+		int tryNumber = 0;
+		boolean tryAgain = true;
 
 		// Execute document identification steps until stop criteria is
 		// fulfilled
 		while (tryAgain && tryNumber < MAX_NUM_TRIES) {
-			// Apply morphological operation, removing noise
-			sourceImg = morphOp.execute(original);
-			firePropertyChange(IMAGE_MORPHED, null, sourceImg);
-
-			// Detect edges
-			edgeDetector.setSourceImage(sourceImg);
-			
-			
-			// /////////////////Break point///////////////////////
-			if (Thread.interrupted())
-				return null;
-			// ///////////////////////////////////////////////////
-			
-			
-			edgeDetector.process();
-			
-			// /////////////////Break point///////////////////////
-			if (Thread.interrupted())
+			Attempt attempt = attempt(original);
+			if (attempt == null)
 				return null;
-			// ///////////////////////////////////////////////////
-			
-			
-			sourceImg = edgeDetector.getEdgesImage();
-			firePropertyChange(IMAGE_EDGE_DETECTED, null, sourceImg);
-
-			// Run Hough transform, and find suitable lines by automatically
-			// adjust line threshold
-			HoughData houghData = null;
-			Vector<Intersection> filteredIntersections = null;
-			Vector<HoughLine> lines = null;
-			Vector<Intersection> intersections = null;
-			boolean findMoreLines = true;
-
-			// Find lines, iterate until enough lines has been found
-			do {
-				
-				// /////////////////Break point///////////////////////
-				if (Thread.interrupted())
-					return null;
-				// ///////////////////////////////////////////////////
-				
-				
-				houghData = HoughUtilities
-						.runHoughIterations(sourceImg, lineIterations,
-								lineThreshold[HIGH], lineThreshold[LOW]);
-				lines = houghData.getLines();
-				intersections = houghData.getIntersections();
-				// /////////////////Break point///////////////////////
+			int numLines = attempt.houghData.getLineCount();
+			int numInters = attempt.houghData.getIntersectionCount();
+			int numFiltered = attempt.filtered.getIntersectionCount();
+			Point[] minRect = attempt.minRect;
+
+			if (tryNumber == 0 && speculator != null && !isAccepted(attempt)) {
+				Document speculated = speculate(original, attempt);
 				if (Thread.interrupted())
 					return null;
-				// ///////////////////////////////////////////////////
-				firePropertyChange(IMAGE_HOUGH_TRANSFORMED, null, intersections);
-
-				// Filter out intersection points that are not located on one of
-				// the document edges
-				filteredIntersections = HoughUtilities.filterIntersections(
-						processImg, intersections, colorThreshold);
-				firePropertyChange(INTERSECTIONS_FILTERED, null,
-						filteredIntersections);
-
-				int numInter, numFiltered;
-				numInter = intersections.size();
-
-				// Check if there are any intersections after filtration
-				if (filteredIntersections != null)
-					numFiltered = filteredIntersections.size();
-				else {
-					numFiltered = 1;
-					filteredIntersections = new Vector<Intersection>();
-					filteredIntersections.add(new Intersection(new Point(0, 0),
-							0, 0));
-				}
-				// Adjust line filtering settings if needed
-				if (numFiltered < 4) {
-					if (numInter < MAX_LINES_FOUND) {
-						if (lineThreshold[HIGH] > 0.25) {
-							lineThreshold[HIGH] -= 0.1;
-							findMoreLines = true;
-						} else {
-							findMoreLines = false;
-						}
-					} else {
-						findMoreLines = false;
-					}
-				} else {
-					// TODO: Do something more, possibly adjust edge detection
-					findMoreLines = false;
-				}
-			} while (findMoreLines);
-
-			Vector<Point> filterPoints = new Vector<Point>();
-			for (Intersection intersection : filteredIntersections) {
-				filterPoints.add(intersection.getIntersection());
+				if (speculated != null)
+					return speculated;
 			}
 
-			// Create cropping rectangle
-			Point[] minRect = PointUtilities.minimalEnclosingRectangle(
-					filterPoints, PointUtilities.METRIC_AREA);
-
-			
-			// If no minimal rectangle was created (for example when no points
-			// was supplied to the method)
-			// create a default rectangle with size 0.
-			if (minRect == null) {
-				minRect = new Point[5];
-				minRect[0] = new Point(0, 0);
-				minRect[1] = new Point(0, 0);
-				minRect[2] = new Point(0, 0);
-				minRect[3] = new Point(0, 0);
-				minRect[4] = new Point(0, 0);
-			}
-
-			//Map the cropping rectangle to fit the original image			
-			for(int i = 0; i < minRect.length; i++) {
-				minRect[i].x /= scaleFactor;
-				minRect[i].y /= scaleFactor;
-			}
-			
-			document = Document.toDocment(minRect[0], minRect[1], minRect[2],
-					minRect[3]);
-			document.setId(filePath);
-
-			// Apply pre set padding
-			document.setHeight(document.getHeight() + padding[1]);
-			document.setWidth(document.getWidth() + padding[0]);
-
-			// /////////////////Break point///////////////////////
-			if (Thread.interrupted())
-				return null;
-			// ///////////////////////////////////////////////////
-			
-			
-			if (lines.size() > noisyThreshold
-					|| intersections.size() / lines.size() < interToLineThreshold) {
+			if (numLines > noisyThreshold
+					|| numInters / numLines < interToLineThreshold) {
 				int maxShapeSize = Math.min(processImg.getWidth(),
 						processImg.getHeight()) / 50;
 				int shapeSize = morphOp.getShapeSize();
@@ -321,9 +255,9 @@ public class DocumentIdentifier {
 			if (isOutsideImage(minRect)) {
 				// If there are many intersection points, try to make the image
 				// smoother...
-				if (lines.size() > noisyThreshold
-						|| intersections.size() / lines.size() < interToLineThreshold
-						&& filteredIntersections.size() > 4) {
+				if (numLines > noisyThreshold
+						|| numInters / numLines < interToLineThreshold
+						&& numFiltered > 4) {
 					int opSize = morphOp.getShapeSize();
 					// If the structuring element is relatively small, make it
 					// larger
@@ -354,6 +288,353 @@ public class DocumentIdentifier {
 		return document;
 	}
 
+	/**
+	 * Scale the image for faster processing. The scaler creates the
+	 * grayscale image, needed for further processing, in the same pass.
+	 * Neither image is modified later on, so no copies are needed.
+	 * 
+	 * @param factor
+	 *            The scale factor, relative to the full image
+	 * @return The scaled grayscale image, or null if interrupted
+	 */
+	private BufferedImage scale(double factor) {
+		scaleFactor = factor;
+		scaler.scale(img, Math.max(1, (int) (imageWidth * scaleFactor)),
+				Math.max(1, (int) (imageHeight * scaleFactor)));
+		processImg = scaler.getColorImage();
+		// /////////////////Break point///////////////////////
+		if (Thread.interrupted())
+			return null;
+		// ///////////////////////////////////////////////////
+
+		minimalDocumentArea = processImg.getHeight() * processImg.getWidth()
+				/ 4;
+		firePropertyChange(IMAGE_SCALED, null, processImg);
+
+		BufferedImage grayImg = scaler.getGrayImage();
+		firePropertyChange(IMAGE_GRAYSCALED, null, grayImg);
+		return grayImg;
+	}
+
+	/**
+	 * Make one attempt at identifying the document in the scaled image, with
+	 * the current morphological operation and edge detector. The line
+	 * threshold is lowered until enough intersections are found. The
+	 * document found, in the coordinates of the full image, becomes the
+	 * document of the identifier.
+	 * 
+	 * @param original
+	 *            The scaled grayscale image
+	 * @return The outcome of the attempt, or null if interrupted
+	 */
+	private Attempt attempt(BufferedImage original) {
+		// Apply morphological operation, removing noise
+		// The result lives in the reused buffers, so listeners get a copy
+		BufferedImage sourceImg = morphOp.execute(original, morphBuffers);
+		if (notifier.hasListeners(IMAGE_MORPHED))
+			firePropertyChange(IMAGE_MORPHED, null,
+					ImageUtilities.copyImage(sourceImg));
+
+		// Detect edges
+		edgeDetector.setSourceImage(sourceImg);
+		
+		
+		// /////////////////Break point///////////////////////
+		if (Thread.interrupted())
+			return null;
+		// ///////////////////////////////////////////////////
+		
+		
+		edgeDetector.process();
+		
+		// /////////////////Break point///////////////////////
+		if (Thread.interrupted())
+			return null;
+		// ///////////////////////////////////////////////////
+		
+		
+		// Only create an edge image if anyone is interested in it, the
+		// Hough transform works directly on the edge data
+		int[] edges = edgeDetector.getEdgesData();
+		int edgesWidth = sourceImg.getWidth();
+		int edgesHeight = sourceImg.getHeight();
+		if (notifier.hasListeners(IMAGE_EDGE_DETECTED))
+			firePropertyChange(IMAGE_EDGE_DETECTED, null,
+					edgeDetector.getEdgesImage());
+
+		// Run Hough transform, and find suitable lines by automatically
+		// adjust line threshold. The points are only voted for once per
+		// edge map, the accumulator is reused for every threshold
+		HoughTransform hough = voteEdges(edges, edgesWidth, edgesHeight);
+		Attempt attempt = new Attempt();
+		boolean findMoreLines = true;
+
+		// Find lines, iterate until enough lines has been found
+		do {
+			
+			// /////////////////Break point///////////////////////
+			if (Thread.interrupted())
+				return null;
+			// ///////////////////////////////////////////////////
+			
+			
+			attempt.houghData = HoughUtilities.runHoughIterations(hough,
+					lineIterations, lineThreshold[HIGH], lineThreshold[LOW]);
+			// /////////////////Break point///////////////////////
+			if (Thread.interrupted())
+				return null;
+			// ///////////////////////////////////////////////////
+			// The intersections are only turned into objects if anyone is
+			// interested in them
+			if (notifier.hasListeners(IMAGE_HOUGH_TRANSFORMED))
+				firePropertyChange(IMAGE_HOUGH_TRANSFORMED, null,
+						attempt.houghData.getIntersections());
+
+			// Filter out intersection points that are not located on one of
+			// the document edges
+			attempt.filtered = HoughUtilities.filterIntersections(processImg,
+					attempt.houghData, colorThreshold);
+			if (notifier.hasListeners(INTERSECTIONS_FILTERED))
+				firePropertyChange(INTERSECTIONS_FILTERED, null,
+						attempt.filtered.getIntersections());
+
+			int numInter = attempt.houghData.getIntersectionCount();
+			int numFiltered = attempt.filtered.getIntersectionCount();
+			// Adjust line filtering settings if needed
+			if (numFiltered < 4) {
+				if (numInter < MAX_LINES_FOUND) {
+					if (lineThreshold[HIGH] > 0.25) {
+						lineThreshold[HIGH] -= 0.1;
+						findMoreLines = true;
+					} else {
+						findMoreLines = false;
+					}
+				} else {
+					findMoreLines = false;
+				}
+			} else {
+				// TODO: Do something more, possibly adjust edge detection
+				findMoreLines = false;
+			}
+		} while (findMoreLines);
+
+		// Create cropping rectangle, directly from the filtered intersections
+		Point[] minRect = PointUtilities.minimalEnclosingRectangle(
+				attempt.filtered.getX(), attempt.filtered.getY(),
+				attempt.filtered.getIntersectionCount(),
+				PointUtilities.METRIC_AREA);
+
+		
+		// If no minimal rectangle was created (for example when no points
+		// was supplied to the method)
+		// create a default rectangle with size 0.
+		if (minRect == null) {
+			minRect = new Point[5];
+			minRect[0] = new Point(0, 0);
+			minRect[1] = new Point(0, 0);
+			minRect[2] = new Point(0, 0);
+			minRect[3] = new Point(0, 0);
+			minRect[4] = new Point(0, 0);
+		}
+
+		//Map the cropping rectangle to fit the original image			
+		for(int i = 0; i < minRect.length; i++) {
+			minRect[i].x /= scaleFactor;
+			minRect[i].y /= scaleFactor;
+		}
+		attempt.minRect = minRect;
+		
+		document = Document.toDocment(minRect[0], minRect[1], minRect[2],
+				minRect[3]);
+		document.setId(filePath);
+
+		// Apply pre set padding
+		document.setHeight(document.getHeight() + padding[1]);
+		document.setWidth(document.getWidth() + padding[0]);
+
+		// /////////////////Break point///////////////////////
+		if (Thread.interrupted())
+			return null;
+		// ///////////////////////////////////////////////////
+		return attempt;
+	}
+
+	/**
+	 * Check if the document found by an attempt would end the retries: the
+	 * edge image is not noisy, the corners lie inside the image, and the
+	 * document is not too small
+	 */
+	private boolean isAccepted(Attempt attempt) {
+		int numLines = attempt.houghData.getLineCount();
+		if (numLines == 0
+				|| numLines > noisyThreshold
+				|| attempt.houghData.getIntersectionCount() / numLines < interToLineThreshold)
+			return false;
+		return !isOutsideImage(attempt.minRect)
+				&& document.getArea() > minimalDocumentArea / scaleFactor;
+	}
+
+	/**
+	 * Run the likely retries of a failed attempt in parallel on the
+	 * speculative executor, each on its own copy of the identifier. The
+	 * variants are ordered as the serial retries would try them, and the
+	 * first accepted one in that order wins, so the result does not depend
+	 * on which variant finishes first. Variants after the winner are
+	 * cancelled as soon as it is known. If no variant is accepted, the
+	 * attempt that came closest is kept, the first attempt included, see
+	 * {@link #rank(Attempt)}. The serial retries are not run after the
+	 * variants, so a hard image costs at most the first attempt and one round
+	 * of variants.
+	 * 
+	 * @param original
+	 *            The scaled grayscale image, which is only read
+	 * @param first
+	 *            The first attempt, which was not accepted
+	 * @return The document of the winning or closest attempt, or null if the
+	 *         edge detector cannot be copied, or if interrupted, in which case
+	 *         the interrupt flag is set again
+	 */
+	private Document speculate(final BufferedImage original, Attempt first) {
+		Vector<DocumentIdentifier> variants = createVariants();
+		if (variants.isEmpty())
+			return null;
+		Vector<Future<Attempt>> futures = new Vector<Future<Attempt>>();
+		for (final DocumentIdentifier variant : variants) {
+			futures.add(speculator.submit(new Callable<Attempt>() {
+				@Override
+				public Attempt call() {
+					return variant.attempt(original);
+				}
+			}));
+		}
+		try {
+			DocumentIdentifier best = this;
+			int bestRank = rank(first);
+			for (int i = 0; i < futures.size(); i++) {
+				Attempt attempt = futures.get(i).get();
+				if (attempt == null)
+					continue;
+				DocumentIdentifier variant = variants.get(i);
+				if (variant.isAccepted(attempt)) {
+					best = variant;
+					break;
+				}
+				int rank = variant.rank(attempt);
+				if (rank > bestRank
+						|| rank == bestRank
+						&& variant.document.getArea() > best.document
+								.getArea()) {
+					best = variant;
+					bestRank = rank;
+				}
+			}
+			document = best.document;
+			morphOp = best.morphOp;
+			return document;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			for (Future<Attempt> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Create the copies of the identifier trying the retries of the serial
+	 * loop: eroding, dilating, raising the edge sensitivity, and finally
+	 * dropping the morphological operation. Every copy gets its own edge
+	 * detector, which is only possible for the {@link CannyEdgeDetector}.
+	 * 
+	 * @return The variants, in the order the serial loop would try them
+	 */
+	private Vector<DocumentIdentifier> createVariants() {
+		Vector<DocumentIdentifier> variants = new Vector<DocumentIdentifier>();
+		if (!(edgeDetector instanceof CannyEdgeDetector))
+			return variants;
+		int sensitivity = ((CannyEdgeDetector) edgeDetector)
+				.getEdgeSensitivity();
+		int shapeSize = morphOp.getShapeSize();
+		if (morphOp instanceof Erosion)
+			shapeSize++;
+		variants.add(createVariant(new Erosion(
+				STRUCTURING_ELEMENT_SHAPE.SQUARE, shapeSize), sensitivity));
+		variants.add(createVariant(new Dilation(
+				STRUCTURING_ELEMENT_SHAPE.SQUARE,
+				morphOp.getShapeSize() + 1), sensitivity));
+		for (int s = sensitivity + 1; s <= AdjustableDetector.HIGH_EDGE_SENSITIVITY; s++) {
+			variants.add(createVariant(morphOp, s));
+		}
+		variants.add(createVariant(new None(),
+				AdjustableDetector.HIGH_EDGE_SENSITIVITY));
+		return variants;
+	}
+
+	/**
+	 * Rank an attempt that was not accepted by how close it came: 2 if only
+	 * the document is too small, 1 if the edge image is noisy but the corners
+	 * lie inside the image, and 0 if the corners lie outside the image
+	 */
+	private int rank(Attempt attempt) {
+		if (isOutsideImage(attempt.minRect))
+			return 0;
+		int numLines = attempt.houghData.getLineCount();
+		if (numLines == 0
+				|| numLines > noisyThreshold
+				|| attempt.houghData.getIntersectionCount() / numLines < interToLineThreshold)
+			return 1;
+		return 2;
+	}
+
+	/**
+	 * Copy the identifier, sharing the scaled images but nothing that an
+	 * attempt changes
+	 */
+	private DocumentIdentifier createVariant(MorphologicalOperation op,
+			int sensitivity) {
+		CannyEdgeDetector detector = new CannyEdgeDetector();
+		detector.setEdgeSensitivity(sensitivity);
+		DocumentIdentifier variant = new DocumentIdentifier(filePath, op,
+				detector);
+		variant.padding = padding;
+		variant.docType = docType;
+		variant.imageWidth = imageWidth;
+		variant.imageHeight = imageHeight;
+		variant.processImg = processImg;
+		variant.scaleFactor = scaleFactor;
+		variant.minimalDocumentArea = minimalDocumentArea;
+		variant.lineThreshold = lineThreshold.clone();
+		variant.noisyThreshold = noisyThreshold;
+		variant.interToLineThreshold = interToLineThreshold;
+		variant.lineIterations = lineIterations;
+		variant.colorThreshold = colorThreshold;
+		return variant;
+	}
+
+	/**
+	 * Check if the document found by an attempt in a coarse image can be
+	 * trusted without looking at a finer image: four corners must remain
+	 * after filtering, the edge image must not be noisy, the corners must lie
+	 * inside the image, and the document must cover at least a quarter of
+	 * the image.
+	 */
+	private boolean isConfident(Attempt attempt) {
+		int numLines = attempt.houghData.getLineCount();
+		if (attempt.filtered.getIntersectionCount() < 4 || numLines == 0)
+			return false;
+		if (numLines > noisyThreshold
+				|| attempt.houghData.getIntersectionCount() / numLines < interToLineThreshold)
+			return false;
+		if (isOutsideImage(attempt.minRect))
+			return false;
+		return document.getArea() >= (double) imageWidth * imageHeight / 4;
+	}
+
 	/**
 	 * Adjust the edge detector to produce a better result
 	 * 
@@ -385,9 +666,9 @@ public class DocumentIdentifier {
 
 	private boolean isOutsideImage(Point[] points) {
 		for (int i = 0; i < points.length; i++) {
-			if (points[i].x < 0 || points[i].x >= img.getWidth())
+			if (points[i].x < 0 || points[i].x >= imageWidth)
 				return true;
-			else if (points[i].y < 0 || points[i].y >= img.getHeight())
+			else if (points[i].y < 0 || points[i].y >= imageHeight)
 				return true;
 		}
 		return false;
@@ -474,6 +755,22 @@ public class DocumentIdentifier {
 		this.filePath = filePath;
 	}
 
+	/**
+	 * Set whether {@link #load()} may decode the image at a reduced
+	 * resolution. This lowers the time and memory needed to load large
+	 * images. Default value is true.
+	 * 
+	 * @param subsampledLoading
+	 *            True if the image may be loaded at a reduced resolution
+	 */
+	public void setSubsampledLoading(boolean subsampledLoading) {
+		this.subsampledLoading = subsampledLoading;
+	}
+
+	public boolean isSubsampledLoading() {
+		return subsampledLoading;
+	}
+
 	/**
 	 * Get the internal process image size (the maximum of the height and width
 	 * of the process image).
@@ -500,6 +797,67 @@ public class DocumentIdentifier {
 		this.imageProcessSize = imageProcessSize;
 	}
 
+	/**
+	 * Set whether the document should first be looked for in a coarse image,
+	 * of the coarse process size. The coarse result is kept if four corners
+	 * remain after filtering, the edge image is not noisy, the document lies
+	 * inside the image and covers at least a quarter of it. Otherwise the
+	 * document is identified at the process size, as without coarse-to-fine
+	 * identification. Clean scans are then identified in a fraction of the
+	 * time, at the cost of a less accurate document. Default value is false.
+	 * 
+	 * @param coarseToFine
+	 *            True to start with a coarse image
+	 */
+	public void setCoarseToFine(boolean coarseToFine) {
+		this.coarseToFine = coarseToFine;
+	}
+
+	public boolean isCoarseToFine() {
+		return coarseToFine;
+	}
+
+	public int getCoarseProcessSize() {
+		return coarseProcessSize;
+	}
+
+	/**
+	 * Set the size of the coarse process image, see
+	 * {@link #setCoarseToFine(boolean)}. Default value is 200.
+	 * 
+	 * @param coarseProcessSize
+	 *            The maximum of the height and width of the coarse image
+	 */
+	public void setCoarseProcessSize(int coarseProcessSize) {
+		if (coarseProcessSize <= 0)
+			throw new IllegalArgumentException(
+					"Coarse image size must be > 0.");
+		this.coarseProcessSize = coarseProcessSize;
+	}
+
+	/**
+	 * Set the executor running the retries in parallel. When the first
+	 * attempt at identifying a document is not accepted, the identifier
+	 * normally changes the morphological operation or the edge detector one
+	 * step at a time, and tries again. With an executor, the likely
+	 * combinations are instead tried at the same time, and the first one the
+	 * serial retries would have accepted is used, or else the one that came
+	 * closest. This bounds the time spent on hard images. Retries are only run in parallel with the default
+	 * {@link CannyEdgeDetector}. The executor must not be the one running the
+	 * identification itself, or it could wait for its own variants. Default
+	 * value is null, serial retries.
+	 * 
+	 * @param speculator
+	 *            The executor, or null for serial retries
+	 */
+	public void setSpeculativeExecutor(ExecutorService speculator) {
+		this.speculator = speculator;
+	}
+
+	public ExecutorService getSpeculativeExecutor() {
+		return speculator;
+	}
+
 	/**
 	 * Get the morphological operand to be used by the
 	 * <code>DocumentIdentifier</code>.
@@ -523,6 +881,66 @@ public class DocumentIdentifier {
 		this.morphOp = morphOp;
 	}
 
+	/**
+	 * Get a Hough transform with the edge points voted for. The transform is
+	 * kept between calls and only reallocated when the size of the edge map
+	 * changes. If the edges are the same as the ones last voted for, e.g. when
+	 * a new try ends up with the same edge map, the votes are reused as well.
+	 */
+	private HoughTransform voteEdges(int[] edges, int width, int height) {
+		if (houghTransform != null && houghTransform.getWidth() == width
+				&& houghTransform.getHeight() == height) {
+			if (Arrays.equals(edges, votedEdges))
+				return houghTransform;
+			houghTransform.reset();
+		} else {
+			houghTransform = new HoughTransform(width, height);
+		}
+		houghTransform.setParallel(parallelHough);
+		houghTransform.addPoints(edges);
+
+		// The edge detector may overwrite its data on the next run
+		if (votedEdges == null || votedEdges.length != edges.length)
+			votedEdges = new int[edges.length];
+		System.arraycopy(edges, 0, votedEdges, 0, edges.length);
+		return houghTransform;
+	}
+
+	/**
+	 * Set whether the Hough transform should vote for the edge points in
+	 * parallel. Parallel voting lowers the latency of a single identification,
+	 * but when many documents are identified concurrently, e.g. by an
+	 * <code>ImageBatch</code>, serial voting gives better throughput. The
+	 * identified document is the same in both modes. The default is serial
+	 * voting.
+	 * 
+	 * @param parallelHough
+	 *            True for parallel voting
+	 */
+	public void setParallelHough(boolean parallelHough) {
+		this.parallelHough = parallelHough;
+	}
+
+	public boolean isParallelHough() {
+		return parallelHough;
+	}
+
+	/**
+	 * Set whether the image should be scaled down in parallel, see
+	 * {@link AreaAveragingScaler#setParallel(boolean)}. The default is serial
+	 * scaling.
+	 * 
+	 * @param parallelScaling
+	 *            True for parallel scaling
+	 */
+	public void setParallelScaling(boolean parallelScaling) {
+		scaler.setParallel(parallelScaling);
+	}
+
+	public boolean isParallelScaling() {
+		return scaler.isParallel();
+	}
+
 	public EdgeDetector getEdgeDetector() {
 		return edgeDetector;
 	}
@@ -597,6 +1015,43 @@ public class DocumentIdentifier {
 		return padding;
 	}
 
+	/**
+	 * Describe everything, apart from the image, that decides which document
+	 * the <code>DocumentIdentifier</code> finds: the process size, the
+	 * thresholds, the morphological operation, the edge detector, the
+	 * document type and the padding. Two identifiers with the same parameters
+	 * find the same document in the same image, which makes the parameters
+	 * usable as part of a cache key, see {@link common.DocumentCache}. The
+	 * morphological operation and the edge detector are described by their
+	 * <code>toString()</code>.
+	 * 
+	 * @return The parameters of the identifier
+	 */
+	public String getParameters() {
+		return "processSize=" + imageProcessSize
+				+ (coarseToFine ? ";coarseSize=" + coarseProcessSize : "")
+				+ (speculator != null ? ";speculative" : "")
+				+ ";subsampled="
+				+ subsampledLoading + ";lineThreshold=" + lineThreshold[LOW]
+				+ "," + lineThreshold[HIGH] + ";lineIterations="
+				+ lineIterations + ";colorThreshold=" + colorThreshold
+				+ ";noisyThreshold=" + noisyThreshold + ";interToLine="
+				+ interToLineThreshold + ";tries=" + MAX_NUM_TRIES
+				+ ";morphOp=" + morphOp + ";edgeDetector=" + edgeDetector
+				+ ";type=" + docType + ";padding=" + padding[0] + ","
+				+ padding[1];
+	}
+
+	/**
+	 * The outcome of one attempt at identifying the document
+	 */
+	private static class Attempt {
+		private HoughData houghData;
+		private HoughData filtered;
+		// The corners of the document in the full image
+		private Point[] minRect;
+	}
+
 	public static void main(String[] args) {
 
 		final JFrame f = new JFrame();
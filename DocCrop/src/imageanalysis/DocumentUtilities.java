@@ -16,6 +16,13 @@ public class DocumentUtilities {
 	public static final int LINEAR_POSITION = 1;
 	private static int medianWindowSize = 3;
 
+	/**
+	 * The number of documents in the window of the median position
+	 */
+	public static int getMedianWindowSize() {
+		return medianWindowSize;
+	}
+
 	public static Vector<Document> correctDocuments(Vector<Document> documents) {
 		if (documents == null)
 			return null;
@@ -30,7 +37,7 @@ public class DocumentUtilities {
 				&& positionMode == MEDIAN_POSITION) {
 			return documents;
 		}
-		return correctDocuments(documents, MEDIAN_POSITION, 0.5);
+		return correctDocuments(documents, positionMode, 0.5);
 	}
 
 	public static Vector<Document> correctDocuments(Vector<Document> documents,
@@ -38,7 +45,7 @@ public class DocumentUtilities {
 		if (documents == null)
 			return null;
 		if (documents.size() < medianWindowSize
-				&& positionMode == MEDIAN_POSITION) {
+				&& positionMode == MEDIAN_POSITION || documents.isEmpty()) {
 			return documents;
 		}
 		if (dimensionQuantile < 0 || dimensionQuantile > 1)
@@ -71,6 +78,14 @@ public class DocumentUtilities {
 			}
 			break;
 		case LINEAR_POSITION:
+			LinearPositionFit fit = new LinearPositionFit();
+			for (int i = 0; i < size; i++) {
+				fit.add(documents.get(i).getLocation());
+			}
+			for (int i = 0; i < size; i++) {
+				toReturn.add(new Document(fit.getPosition(i), correctedDim.x,
+						correctedDim.y, correctedRot, documents.get(i).getId()));
+			}
 			break;
 		}
 		return toReturn;
@@ -6,6 +6,15 @@ public interface EdgeDetector {
 
 	public void process();
 	public BufferedImage getEdgesImage();
+	/**
+	 * Get the edges detected during the last call to process, as packed ARGB
+	 * pixels in row-major order. Edge pixels are white and all other pixels
+	 * are black. The array is owned by the detector and is overwritten by the
+	 * next call to process.
+	 * 
+	 * @return the edge pixels, or null if process has not yet been called
+	 */
+	public int[] getEdgesData();
 	public void setSourceImage(BufferedImage img);
 
 }
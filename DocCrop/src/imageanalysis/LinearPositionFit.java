@@ -0,0 +1,155 @@
+package imageanalysis;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A robust linear fit of the positions of the documents of a batch against
+ * their index in the batch, used to correct batches whose spine moves
+ * steadily from page to page.
+ *
+ * Both coordinates are fitted with the Theil-Sen estimator: the slope is the
+ * median of the slopes between all pairs of points, and the intercept the
+ * median of the residuals. A few misidentified documents therefore do not
+ * move the fit. To keep the cost bounded the estimator works on a uniform
+ * sample of at most a fixed number of points, kept up to date by reservoir
+ * sampling as the positions are added. Adding a position is O(1), and the fit
+ * does not depend on the size of the batch. Batches no larger than the sample
+ * get the exact Theil-Sen fit.
+ *
+ * The sample is drawn with a fixed seed, so the same batch always gives the
+ * same fit.
+ *
+ * @author Tomas Toss
+ */
+public class LinearPositionFit {
+	public static final int DEFAULT_SAMPLE_SIZE = 256;
+
+	private static final long SEED = 0x446f6343726f70L;
+
+	private final int[] sampleIndex;
+	private final int[] sampleX;
+	private final int[] sampleY;
+	private final Random random = new Random(SEED);
+	private int count;
+	private int sampled;
+
+	// The fit, computed when first needed after an add
+	private boolean fitted;
+	private double slopeX, interceptX;
+	private double slopeY, interceptY;
+
+	public LinearPositionFit() {
+		this(DEFAULT_SAMPLE_SIZE);
+	}
+
+	/**
+	 * Create a fit
+	 *
+	 * @param sampleSize
+	 *            The maximum number of positions the fit is computed from
+	 *            (>= 2)
+	 */
+	public LinearPositionFit(int sampleSize) {
+		if (sampleSize < 2)
+			throw new IllegalArgumentException(
+					"The sample size must be >= 2");
+		sampleIndex = new int[sampleSize];
+		sampleX = new int[sampleSize];
+		sampleY = new int[sampleSize];
+	}
+
+	/**
+	 * Add the position of the next document of the batch
+	 *
+	 * @param position
+	 *            The center of the document
+	 */
+	public void add(Point position) {
+		int slot = sampled;
+		if (sampled < sampleIndex.length) {
+			sampled++;
+		} else {
+			// Keep every position with the same probability
+			long r = (long) (random.nextDouble() * (count + 1));
+			slot = r < sampleIndex.length ? (int) r : -1;
+		}
+		if (slot >= 0) {
+			sampleIndex[slot] = count;
+			sampleX[slot] = position.x;
+			sampleY[slot] = position.y;
+		}
+		count++;
+		fitted = false;
+	}
+
+	/**
+	 * Number of positions added
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the fitted position of a document
+	 *
+	 * @param index
+	 *            The index of the document in the batch
+	 * @return The position, or null if no position has been added
+	 */
+	public Point getPosition(int index) {
+		if (count == 0)
+			return null;
+		if (!fitted)
+			fit();
+		int x = (int) Math.round(interceptX + slopeX * index);
+		int y = (int) Math.round(interceptY + slopeY * index);
+		return new Point(Math.max(x, 0), Math.max(y, 0));
+	}
+
+	private void fit() {
+		slopeX = slope(sampleX);
+		interceptX = intercept(sampleX, slopeX);
+		slopeY = slope(sampleY);
+		interceptY = intercept(sampleY, slopeY);
+		fitted = true;
+	}
+
+	/**
+	 * The median of the slopes between all pairs of sampled points
+	 */
+	private double slope(int[] values) {
+		if (sampled < 2)
+			return 0;
+		double[] slopes = new double[sampled * (sampled - 1) / 2];
+		int k = 0;
+		for (int i = 0; i < sampled; i++) {
+			for (int j = i + 1; j < sampled; j++) {
+				// The indices of the sample are distinct
+				slopes[k++] = (double) (values[j] - values[i])
+						/ (sampleIndex[j] - sampleIndex[i]);
+			}
+		}
+		return median(slopes);
+	}
+
+	/**
+	 * The median of the residuals of the sampled points
+	 */
+	private double intercept(int[] values, double slope) {
+		double[] residuals = new double[sampled];
+		for (int i = 0; i < sampled; i++) {
+			residuals[i] = values[i] - slope * sampleIndex[i];
+		}
+		return median(residuals);
+	}
+
+	private static double median(double[] values) {
+		Arrays.sort(values);
+		int middle = values.length / 2;
+		if (values.length % 2 == 1)
+			return values[middle];
+		return (values[middle - 1] + values[middle]) / 2;
+	}
+}
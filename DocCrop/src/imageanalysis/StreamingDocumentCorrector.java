@@ -0,0 +1,291 @@
+package imageanalysis;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Vector;
+
+import common.Document;
+
+/**
+ * Corrects the documents of a batch while they are identified, instead of
+ * after the whole batch, see
+ * {@link DocumentUtilities#correctDocuments(Vector)}. Every document is
+ * corrected as soon as the documents of its median window have been added,
+ * so the corrected documents come out at most a window behind the added ones,
+ * and the memory used does not grow with the size of the batch.
+ *
+ * The positions are the same as the ones of the batch correction: the median
+ * of the positions in a window around the document. The sorted window is
+ * updated as it slides, instead of being sorted for every document. The
+ * dimensions and the rotation are quantiles, kept in histograms, of the
+ * documents added so far. Documents corrected early in the batch may
+ * therefore get other dimensions than the batch correction would give them.
+ *
+ * A corrector is used for a single batch.
+ *
+ * @author Tomas Toss
+ */
+public class StreamingDocumentCorrector {
+	private final int windowSize;
+	private final int half;
+	private final double dimensionQuantile;
+
+	// Documents still needed, buffer.get(0) is document number first
+	private final Vector<Document> buffer = new Vector<Document>();
+	private int first;
+	private int count;
+	private int corrected;
+
+	// The sorted positions of the documents windowFrom to windowTo
+	private final SortedWindow xs, ys;
+	private int windowFrom, windowTo;
+
+	private final Histogram widths = new Histogram(0);
+	private final Histogram heights = new Histogram(0);
+	private final Histogram rotations = new Histogram(-90);
+
+	/**
+	 * Create a corrector with the median window and dimension quantile of the
+	 * batch correction
+	 */
+	public StreamingDocumentCorrector() {
+		this(DocumentUtilities.getMedianWindowSize(), 0.5);
+	}
+
+	/**
+	 * Create a corrector
+	 *
+	 * @param windowSize
+	 *            The number of documents in the median window of the
+	 *            positions (>= 1)
+	 * @param dimensionQuantile
+	 *            The quantile of the dimensions and the rotation, 0 <=
+	 *            quantile <= 1
+	 */
+	public StreamingDocumentCorrector(int windowSize, double dimensionQuantile) {
+		if (windowSize < 1)
+			throw new IllegalArgumentException(
+					"The window size must be >= 1");
+		if (dimensionQuantile < 0 || dimensionQuantile > 1)
+			throw new IllegalArgumentException(
+					"The quantile must be 0 <= quantile <= 1");
+		this.windowSize = windowSize;
+		this.half = windowSize / 2;
+		this.dimensionQuantile = dimensionQuantile;
+		xs = new SortedWindow(windowSize);
+		ys = new SortedWindow(windowSize);
+	}
+
+	/**
+	 * Add the next document of the batch
+	 *
+	 * @param doc
+	 *            The identified document
+	 * @return The documents that could be corrected, in batch order, possibly
+	 *         none
+	 */
+	public Vector<Document> add(Document doc) {
+		buffer.add(doc);
+		count++;
+		widths.add(doc.getWidth());
+		heights.add(doc.getHeight());
+		rotations.add(doc.getRotation());
+
+		Vector<Document> toReturn = new Vector<Document>();
+		// As in the batch correction, nothing is corrected in batches smaller
+		// than the window
+		if (count < windowSize)
+			return toReturn;
+		while (corrected + half <= count && corrected < count) {
+			toReturn.add(correct(corrected, window(corrected)));
+			corrected++;
+		}
+		trim();
+		return toReturn;
+	}
+
+	/**
+	 * Correct the remaining documents, once the whole batch has been added
+	 *
+	 * @return The remaining documents, in batch order
+	 */
+	public Vector<Document> flush() {
+		Vector<Document> toReturn = new Vector<Document>();
+		if (count < windowSize) {
+			toReturn.addAll(buffer);
+		} else {
+			for (; corrected < count; corrected++) {
+				Point position;
+				if (corrected > count - half)
+					position = median(count - half - 1, count - 1);
+				else
+					position = window(corrected);
+				toReturn.add(correct(corrected, position));
+			}
+		}
+		buffer.clear();
+		first = count;
+		return toReturn;
+	}
+
+	/**
+	 * Number of documents added but not yet corrected
+	 */
+	public int getPending() {
+		return count - corrected;
+	}
+
+	/**
+	 * The median position of the window of a document that is not among the
+	 * last of the batch. The first documents share the first window.
+	 */
+	private Point window(int index) {
+		if (index < half)
+			return median(0, windowSize - 1);
+		int from = index - half;
+		int to = index + half;
+		if (from < windowFrom || to < windowTo) {
+			xs.clear();
+			ys.clear();
+			windowFrom = windowTo = from;
+		}
+		while (windowTo < to) {
+			Document doc = get(windowTo++);
+			xs.add(doc.getX());
+			ys.add(doc.getY());
+		}
+		while (windowFrom < from) {
+			Document doc = get(windowFrom++);
+			xs.remove(doc.getX());
+			ys.remove(doc.getY());
+		}
+		if (xs.size() == 0)
+			return median(from, to);
+		return new Point(xs.median(), ys.median());
+	}
+
+	/**
+	 * The median position of the documents from to to, exclusive, taken
+	 * directly, for the windows that do not slide
+	 */
+	private Point median(int from, int to) {
+		int size = to - from;
+		if (size <= 0) {
+			// Only with a window of one document
+			Document doc = get(from);
+			return new Point(doc.getX(), doc.getY());
+		}
+		int[] x = new int[size];
+		int[] y = new int[size];
+		for (int i = 0; i < size; i++) {
+			x[i] = get(from + i).getX();
+			y[i] = get(from + i).getY();
+		}
+		Arrays.sort(x);
+		Arrays.sort(y);
+		return new Point(x[size / 2], y[size / 2]);
+	}
+
+	private Document correct(int index, Point position) {
+		int rank = Math.min((int) (count * dimensionQuantile), count - 1);
+		return new Document(position, widths.get(rank), heights.get(rank),
+				rotations.get(rank), get(index).getId());
+	}
+
+	private Document get(int index) {
+		return buffer.get(index - first);
+	}
+
+	/**
+	 * Drop the documents no window will need again
+	 */
+	private void trim() {
+		int keepFrom = Math.min(windowFrom, corrected - windowSize - 1);
+		if (corrected < half)
+			keepFrom = 0;
+		while (first < keepFrom) {
+			buffer.remove(0);
+			first++;
+		}
+	}
+
+	/**
+	 * A window of values kept sorted, from which single values are added and
+	 * removed
+	 */
+	private static class SortedWindow {
+		private int[] values;
+		private int size;
+
+		SortedWindow(int capacity) {
+			values = new int[Math.max(capacity, 1)];
+		}
+
+		void add(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, 2 * size);
+			int index = Arrays.binarySearch(values, 0, size, value);
+			if (index < 0)
+				index = -index - 1;
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = value;
+			size++;
+		}
+
+		void remove(int value) {
+			int index = Arrays.binarySearch(values, 0, size, value);
+			if (index < 0)
+				throw new IllegalStateException("Not in window: " + value);
+			System.arraycopy(values, index + 1, values, index, size - index
+					- 1);
+			size--;
+		}
+
+		int median() {
+			return values[size / 2];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+	/**
+	 * Counts of integer values, growing with the largest value added. The
+	 * values are bounded by the size of the images, so the memory does not
+	 * depend on the number of values.
+	 */
+	private static class Histogram {
+		private final int offset;
+		private int[] counts = new int[256];
+
+		Histogram(int min) {
+			offset = -min;
+		}
+
+		void add(int value) {
+			int index = Math.max(value + offset, 0);
+			if (index >= counts.length)
+				counts = Arrays.copyOf(counts, Math.max(2 * counts.length,
+						index + 1));
+			counts[index]++;
+		}
+
+		/**
+		 * The value at the rank among the sorted values
+		 */
+		int get(int rank) {
+			int seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen > rank)
+					return i - offset;
+			}
+			throw new IllegalArgumentException("No value at rank " + rank);
+		}
+	}
+}
@@ -5,6 +5,8 @@ import imageanalysis.EdgeDetector;
 
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p>
@@ -54,6 +56,13 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 	private final static float MAGNITUDE_LIMIT = 1000F;
 	private final static int MAGNITUDE_MAX = (int) (MAGNITUDE_SCALE * MAGNITUDE_LIMIT);
 
+	// stages of the gradient computation, and the smallest band of rows
+	// processed by a single task when running in parallel
+	private final static int STAGE_CONVOLVE = 0;
+	private final static int STAGE_GRADIENT = 1;
+	private final static int STAGE_SUPPRESS = 2;
+	private final static int MIN_BAND_ROWS = 16;
+
 	// fields
 
 	private int height;
@@ -63,12 +72,14 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 	private int[] magnitude;
 	private BufferedImage sourceImage;
 	private BufferedImage edgesImage;
+	private boolean edgesImageValid;
 	private int edgeSensitivity = MEDIUM_EDGE_SENSITIVITY;
 	private float gaussianKernelRadius;
 	private float lowThreshold;
 	private float highThreshold;
 	private int gaussianKernelWidth;
 	private boolean contrastNormalized;
+	private boolean parallel;
 
 	private float[] xConv;
 	private float[] yConv;
@@ -122,9 +133,29 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 	 */
 
 	public BufferedImage getEdgesImage() {
+		// The image is only created when asked for, callers working on the
+		// edge data directly never pay for it
+		if (!edgesImageValid && data != null) {
+			writeEdges(data);
+			edgesImageValid = true;
+		}
 		return edgesImage;
 	}
 
+	/**
+	 * Obtains the edges detected during the last call to the process method,
+	 * as packed ARGB pixels in row-major order. Edge pixels are white (-1) and
+	 * all other pixels are black (0xff000000). The returned array is reused,
+	 * and overwritten, by the next call to process.
+	 * 
+	 * @return the edge pixels, or null if the process method has not yet been
+	 *         called.
+	 */
+
+	public int[] getEdgesData() {
+		return data;
+	}
+
 	/**
 	 * Sets the edges image. Calling this method will not change the operation
 	 * of the edge detector in any way. It is intended to provide a means by
@@ -136,6 +167,7 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 
 	public void setEdgesImage(BufferedImage edgesImage) {
 		this.edgesImage = edgesImage;
+		edgesImageValid = edgesImage != null;
 	}
 
 	/**
@@ -263,6 +295,31 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 		this.contrastNormalized = contrastNormalized;
 	}
 
+	/**
+	 * Whether the gradients are computed in parallel, in bands of rows on the
+	 * common fork-join pool. The default value is false.
+	 * 
+	 * @return whether the gradients are computed in parallel
+	 */
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Sets whether the gradients are computed in parallel. The detected edges
+	 * are exactly the same in both modes, but a single detector object must
+	 * still only be used by one thread at a time.
+	 * 
+	 * @param parallel
+	 *            true if the gradients should be computed in parallel, false
+	 *            otherwise
+	 */
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	@Override
 	public void setEdgeSensitivity(int edgeSensitivity) {
 		switch (edgeSensitivity) {
@@ -299,6 +356,16 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 
 	}
 
+	/**
+	 * Describes the parameters that decide which edges are found
+	 */
+	@Override
+	public String toString() {
+		return "CannyEdgeDetector(" + edgeSensitivity + ", " + lowThreshold
+				+ ", " + highThreshold + ", " + gaussianKernelRadius + ", "
+				+ gaussianKernelWidth + ", " + contrastNormalized + ")";
+	}
+
 	// methods
 
 	public void process() {
@@ -314,7 +381,7 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 		int high = Math.round(highThreshold * MAGNITUDE_SCALE);
 		performHysteresis(low, high);
 		thresholdEdges();
-		writeEdges(data);
+		edgesImageValid = false;
 	}
 
 	// private utility methods
@@ -360,70 +427,109 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 			diffKernel[kwidth] = g3 - g2;
 		}
 
+		if (parallel) {
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			pool.invoke(new BandTask(STAGE_CONVOLVE, kernel, diffKernel,
+					kwidth));
+			pool.invoke(new BandTask(STAGE_GRADIENT, kernel, diffKernel,
+					kwidth));
+			pool.invoke(new BandTask(STAGE_SUPPRESS, kernel, diffKernel,
+					kwidth));
+		} else {
+			int firstRow = kwidth - 1;
+			int lastRow = height - (kwidth - 1);
+			convolve(kernel, kwidth, firstRow, lastRow);
+			differentiate(diffKernel, kwidth, firstRow, lastRow);
+			suppressNonMaxima(kwidth, kwidth, height - kwidth);
+		}
+	}
+
+	// The three stages below are run one after another, each stage reads what
+	// the previous one wrote around its rows. Within a stage the rows are
+	// independent, so a stage can be split into bands of rows. The loops run
+	// in row-major order, with the kernel offset as the outer loop, which
+	// keeps the innermost loops simple enough for the JIT to vectorize. Every
+	// pixel still sees its terms added in the same order as in a plain
+	// per-pixel loop, so the result does not depend on how it is split.
+
+	/**
+	 * Gaussian convolution in x and y directions, of the rows
+	 * <code>[fromRow, toRow)</code>.
+	 */
+	private void convolve(float[] kernel, int kwidth, int fromRow, int toRow) {
 		int initX = kwidth - 1;
 		int maxX = width - (kwidth - 1);
-		int initY = width * (kwidth - 1);
-		int maxY = width * (height - (kwidth - 1));
-
-		// perform convolution in x and y directions
-		for (int x = initX; x < maxX; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				int index = x + y;
-				float sumX = data[index] * kernel[0];
-				float sumY = sumX;
-				int xOffset = 1;
-				int yOffset = width;
-				for (; xOffset < kwidth;) {
-					sumY += kernel[xOffset]
+		for (int y = fromRow; y < toRow; y++) {
+			int rowStart = y * width + initX;
+			int rowEnd = y * width + maxX;
+			float k = kernel[0];
+			for (int index = rowStart; index < rowEnd; index++) {
+				float sum = data[index] * k;
+				yConv[index] = sum;
+				xConv[index] = sum;
+			}
+			int yOffset = width;
+			for (int xOffset = 1; xOffset < kwidth; xOffset++) {
+				k = kernel[xOffset];
+				for (int index = rowStart; index < rowEnd; index++) {
+					yConv[index] += k
 							* (data[index - yOffset] + data[index + yOffset]);
-					sumX += kernel[xOffset]
+				}
+				for (int index = rowStart; index < rowEnd; index++) {
+					xConv[index] += k
 							* (data[index - xOffset] + data[index + xOffset]);
-					yOffset += width;
-					xOffset++;
 				}
-
-				yConv[index] = sumY;
-				xConv[index] = sumX;
+				yOffset += width;
 			}
-
 		}
+	}
 
-		for (int x = initX; x < maxX; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				float sum = 0f;
-				int index = x + y;
-				for (int i = 1; i < kwidth; i++)
-					sum += diffKernel[i]
+	/**
+	 * Gradients in x and y directions, of the rows
+	 * <code>[fromRow, toRow)</code>.
+	 */
+	private void differentiate(float[] diffKernel, int kwidth, int fromRow,
+			int toRow) {
+		for (int y = fromRow; y < toRow; y++) {
+			int rowStart = y * width + kwidth - 1;
+			int rowEnd = y * width + width - (kwidth - 1);
+			for (int index = rowStart; index < rowEnd; index++) {
+				xGradient[index] = 0f;
+			}
+			for (int i = 1; i < kwidth; i++) {
+				float k = diffKernel[i];
+				for (int index = rowStart; index < rowEnd; index++) {
+					xGradient[index] += k
 							* (yConv[index - i] - yConv[index + i]);
-
-				xGradient[index] = sum;
+				}
 			}
 
-		}
-
-		for (int x = kwidth; x < width - kwidth; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				float sum = 0.0f;
-				int index = x + y;
-				int yOffset = width;
-				for (int i = 1; i < kwidth; i++) {
-					sum += diffKernel[i]
+			rowStart = y * width + kwidth;
+			rowEnd = y * width + width - kwidth;
+			for (int index = rowStart; index < rowEnd; index++) {
+				yGradient[index] = 0f;
+			}
+			int yOffset = width;
+			for (int i = 1; i < kwidth; i++) {
+				float k = diffKernel[i];
+				for (int index = rowStart; index < rowEnd; index++) {
+					yGradient[index] += k
 							* (xConv[index - yOffset] - xConv[index + yOffset]);
-					yOffset += width;
 				}
-
-				yGradient[index] = sum;
+				yOffset += width;
 			}
-
 		}
+	}
 
-		initX = kwidth;
-		maxX = width - kwidth;
-		initY = width * kwidth;
-		maxY = width * (height - kwidth);
-		for (int x = initX; x < maxX; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				int index = x + y;
+	/**
+	 * Non-maximal suppression of the rows <code>[fromRow, toRow)</code>,
+	 * writing the gradient magnitudes of the edge candidates.
+	 */
+	private void suppressNonMaxima(int kwidth, int fromRow, int toRow) {
+		int initX = kwidth;
+		int maxX = width - kwidth;
+		for (int y = fromRow; y < toRow; y++) {
+			for (int x = initX, index = y * width + initX; x < maxX; x++, index++) {
 				int indexN = index - width;
 				int indexS = index + width;
 				int indexW = index - 1;
@@ -506,6 +612,58 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 		}
 	}
 
+	/**
+	 * Runs one stage of the gradient computation on a band of rows, splitting
+	 * the band between sub tasks until it is small enough.
+	 */
+	@SuppressWarnings("serial")
+	private class BandTask extends RecursiveAction {
+		private final int stage;
+		private final float[] kernel;
+		private final float[] diffKernel;
+		private final int kwidth;
+		private final int fromRow, toRow;
+
+		BandTask(int stage, float[] kernel, float[] diffKernel, int kwidth) {
+			this(stage, kernel, diffKernel, kwidth,
+					stage == STAGE_SUPPRESS ? kwidth : kwidth - 1,
+					stage == STAGE_SUPPRESS ? height - kwidth : height
+							- (kwidth - 1));
+		}
+
+		private BandTask(int stage, float[] kernel, float[] diffKernel,
+				int kwidth, int fromRow, int toRow) {
+			this.stage = stage;
+			this.kernel = kernel;
+			this.diffKernel = diffKernel;
+			this.kwidth = kwidth;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (toRow - fromRow > MIN_BAND_ROWS) {
+				int middle = (fromRow + toRow) >>> 1;
+				invokeAll(new BandTask(stage, kernel, diffKernel, kwidth,
+						fromRow, middle), new BandTask(stage, kernel,
+						diffKernel, kwidth, middle, toRow));
+				return;
+			}
+			switch (stage) {
+			case STAGE_CONVOLVE:
+				convolve(kernel, kwidth, fromRow, toRow);
+				break;
+			case STAGE_GRADIENT:
+				differentiate(diffKernel, kwidth, fromRow, toRow);
+				break;
+			case STAGE_SUPPRESS:
+				suppressNonMaxima(kwidth, fromRow, toRow);
+				break;
+			}
+		}
+	}
+
 	// NOTE: It is quite feasible to replace the implementation of this method
 	// with one which only loosely approximates the hypot function. I've tested
 	// simple approximations such as Math.abs(x) + Math.abs(y) and they work
@@ -541,23 +699,35 @@ public class CannyEdgeDetector implements EdgeDetector, AdjustableDetector {
 		}
 	}
 
+	// NOTE: Each step continues from the first neighbour above the threshold
+	// that has not been visited, and the trace ends when there is none. This
+	// used to be a recursive call, which on long edges in large images could
+	// overflow the thread stack. The loop follows exactly the same trace
+	// without using any stack at all.
 	final private void follow(int x1, int y1, int i1, int threshold) {
-		int x0 = x1 == 0 ? x1 : x1 - 1;
-		int x2 = x1 == width - 1 ? x1 : x1 + 1;
-		int y0 = y1 == 0 ? y1 : y1 - 1;
-		int y2 = y1 == height - 1 ? y1 : y1 + 1;
-
-		data[i1] = magnitude[i1];
-		for (int x = x0; x <= x2; x++) {
-			for (int y = y0; y <= y2; y++) {
-				int i2 = x + y * width;
-				if ((y != y1 || x != x1) && data[i2] == 0
-						&& magnitude[i2] >= threshold) {
-					follow(x, y, i2, threshold);
-					return;
+		boolean found;
+		do {
+			int x0 = x1 == 0 ? x1 : x1 - 1;
+			int x2 = x1 == width - 1 ? x1 : x1 + 1;
+			int y0 = y1 == 0 ? y1 : y1 - 1;
+			int y2 = y1 == height - 1 ? y1 : y1 + 1;
+
+			data[i1] = magnitude[i1];
+			found = false;
+			for (int x = x0; x <= x2 && !found; x++) {
+				for (int y = y0; y <= y2; y++) {
+					int i2 = x + y * width;
+					if ((y != y1 || x != x1) && data[i2] == 0
+							&& magnitude[i2] >= threshold) {
+						x1 = x;
+						y1 = y;
+						i1 = i2;
+						found = true;
+						break;
+					}
 				}
 			}
-		}
+		} while (found);
 	}
 
 	final private void thresholdEdges() {
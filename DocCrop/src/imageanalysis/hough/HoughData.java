@@ -1,27 +1,182 @@
 package imageanalysis.hough;
 
+import java.awt.Point;
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
- * Class storing data generated by the Hough Transform 
+ * Class storing data generated by the Hough Transform.
+ *
+ * The lines and the intersections are kept in parallel arrays of primitives
+ * rather than as objects, since they are created and examined in large
+ * numbers for every image. Line i has the angle theta[i] and the radius r[i],
+ * in the local representation of the transform (see {@link HoughLine}).
+ * Intersection k lies at (x[k], y[k]) and is the crossing of the lines
+ * lineA[k] and lineB[k]. The arrays may be longer than the number of lines
+ * and intersections, only the first {@link #getLineCount()} and
+ * {@link #getIntersectionCount()} values are valid.
+ *
  * @author Tomas Toss 26 maj 2011
  */
 public class HoughData {
 
-	private final Vector<HoughLine> lines;
-	private final Vector<Intersection> intersections;
+	private double[] theta;
+	private int[] r;
+	private int lineCount;
 
-	public HoughData(final Vector<HoughLine> lines, final Vector<Intersection> intersections) {
-		this.lines = lines;
-		this.intersections = intersections;
+	private int[] x;
+	private int[] y;
+	private int[] lineA;
+	private int[] lineB;
+	private int intersectionCount;
+
+	public HoughData() {
+		this(16, 16);
 	}
-	
-	public Vector<Intersection> getIntersections() {
-		return intersections;
+
+	/**
+	 * Create an empty container
+	 *
+	 * @param lineCapacity
+	 *            The number of lines room is made for initially
+	 * @param intersectionCapacity
+	 *            The number of intersections room is made for initially
+	 */
+	public HoughData(int lineCapacity, int intersectionCapacity) {
+		lineCapacity = Math.max(lineCapacity, 1);
+		intersectionCapacity = Math.max(intersectionCapacity, 1);
+		theta = new double[lineCapacity];
+		r = new int[lineCapacity];
+		x = new int[intersectionCapacity];
+		y = new int[intersectionCapacity];
+		lineA = new int[intersectionCapacity];
+		lineB = new int[intersectionCapacity];
 	}
-	
+
+	/**
+	 * Create a container with the lines of another one, but none of its
+	 * intersections
+	 *
+	 * @param lines
+	 *            The data to take the lines from
+	 * @param intersectionCapacity
+	 *            The number of intersections room is made for initially
+	 */
+	public HoughData(HoughData lines, int intersectionCapacity) {
+		this(lines.lineCount, intersectionCapacity);
+		System.arraycopy(lines.theta, 0, theta, 0, lines.lineCount);
+		System.arraycopy(lines.r, 0, r, 0, lines.lineCount);
+		lineCount = lines.lineCount;
+	}
+
+	/**
+	 * Add a line
+	 *
+	 * @return The index of the line
+	 */
+	public int addLine(double theta, int r) {
+		if (lineCount == this.theta.length) {
+			this.theta = Arrays.copyOf(this.theta, 2 * lineCount);
+			this.r = Arrays.copyOf(this.r, 2 * lineCount);
+		}
+		this.theta[lineCount] = theta;
+		this.r[lineCount] = r;
+		return lineCount++;
+	}
+
+	/**
+	 * Add an intersection between two of the lines
+	 */
+	public void addIntersection(int x, int y, int lineA, int lineB) {
+		if (intersectionCount == this.x.length) {
+			int capacity = 2 * intersectionCount;
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.lineA = Arrays.copyOf(this.lineA, capacity);
+			this.lineB = Arrays.copyOf(this.lineB, capacity);
+		}
+		this.x[intersectionCount] = x;
+		this.y[intersectionCount] = y;
+		this.lineA[intersectionCount] = lineA;
+		this.lineB[intersectionCount] = lineB;
+		intersectionCount++;
+	}
+
+	/**
+	 * Remove all intersections, keeping the lines
+	 */
+	public void clearIntersections() {
+		intersectionCount = 0;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public int getIntersectionCount() {
+		return intersectionCount;
+	}
+
+	/**
+	 * The angles of the lines, in radians
+	 */
+	public double[] getTheta() {
+		return theta;
+	}
+
+	/**
+	 * The radii of the lines, in the local representation of the transform
+	 */
+	public int[] getR() {
+		return r;
+	}
+
+	public int[] getX() {
+		return x;
+	}
+
+	public int[] getY() {
+		return y;
+	}
+
+	/**
+	 * The index of the first line of every intersection
+	 */
+	public int[] getLineA() {
+		return lineA;
+	}
+
+	/**
+	 * The index of the second line of every intersection
+	 */
+	public int[] getLineB() {
+		return lineB;
+	}
+
+	/**
+	 * Get the lines as objects, for drawing and other uses outside the
+	 * identification. A new {@link Vector} is created for every call.
+	 */
 	public Vector<HoughLine> getLines() {
+		Vector<HoughLine> lines = new Vector<HoughLine>(lineCount);
+		for (int i = 0; i < lineCount; i++) {
+			lines.add(new HoughLine(theta[i], r[i]));
+		}
 		return lines;
 	}
 
+	/**
+	 * Get the intersections as objects, for drawing and other uses outside the
+	 * identification. A new {@link Vector} is created for every call.
+	 */
+	public Vector<Intersection> getIntersections() {
+		Vector<Intersection> intersections = new Vector<Intersection>(
+				intersectionCount);
+		for (int k = 0; k < intersectionCount; k++) {
+			intersections.add(new Intersection(new Point(x[k], y[k]),
+					lineA[k], lineB[k], theta[lineA[k]], theta[lineB[k]]));
+		}
+		return intersections;
+	}
+
 }
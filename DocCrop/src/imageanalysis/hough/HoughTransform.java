@@ -2,7 +2,10 @@ package imageanalysis.hough;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p/>
@@ -59,11 +62,15 @@ public class HoughTransform extends Thread {
 	// Using maxTheta, work out the step
 	final double thetaStep = Math.PI / maxTheta;
 
+	// Smallest number of theta values voted for by a single parallel task
+	private static final int MIN_THETA_SPLIT = 8;
+
 	// the width and height of the image
 	protected int width, height;
 
-	// the hough array
-	protected int[][] houghArray;
+	// the hough array, stored theta-major: the votes for theta index t and
+	// radius r are found at houghArray[t * doubleHeight + r]
+	protected int[] houghArray;
 
 	// the coordinates of the centre of the image
 	protected float centerX, centerY;
@@ -77,6 +84,12 @@ public class HoughTransform extends Thread {
 	// the number of points that have been added
 	protected int numPoints;
 
+	// whether addPoints should vote in parallel
+	private boolean parallel;
+
+	// the highest value in the hough array, or -1 if it has to be recomputed
+	private int highestValue = -1;
+
 	// cache of values of sin and cos for different theta values. Has a
 	// significant performance improvement.
 	private double[] sinCache;
@@ -115,7 +128,7 @@ public class HoughTransform extends Thread {
 		doubleHeight = 2 * houghHeight;
 
 		// Create the hough array
-		houghArray = new int[maxTheta][doubleHeight];
+		houghArray = new int[maxTheta * doubleHeight];
 
 		// Find edge points and vote in array
 		centerX = width / 2;
@@ -123,6 +136,7 @@ public class HoughTransform extends Thread {
 
 		// Count how many points there are
 		numPoints = 0;
+		highestValue = -1;
 
 		// cache the values of sin and cos for faster processing
 		sinCache = new double[maxTheta];
@@ -134,35 +148,180 @@ public class HoughTransform extends Thread {
 		}
 	}
 
+	/**
+	 * Clears all votes, keeping the hough array and the sin and cos caches.
+	 * Cheaper than {@link #initialise()} when the transform is reused for
+	 * another image with the same width and height.
+	 */
+	public void reset() {
+		Arrays.fill(houghArray, 0);
+		numPoints = 0;
+		highestValue = -1;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
 	/**
 	 * Adds points from an image. The image is assumed to be greyscale black and
 	 * white, so all pixels that are not black are counted as edges. The image
 	 * should have the same dimensions as the one passed to the constructor.
 	 */
 	public void addPoints(BufferedImage image) {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		int[] row = new int[w];
+
+		// Now find edge points and update the hough array, one row at a time
+		for (int y = 0; y < h; y++) {
+			image.getRGB(0, y, w, 1, row, 0, w);
+			for (int x = 0; x < w; x++) {
+				// Find non-black pixels
+				if ((row[x] & 0x000000ff) != 0) {
+					addPoint(x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds points from packed ARGB pixels, stored in row-major order, e.g. the
+	 * data of an edge detector. All pixels that are not black are counted as
+	 * edges. The pixels should have the same dimensions as the ones passed to
+	 * the constructor.
+	 * 
+	 * @param pixels
+	 *            The pixels, at least width * height elements
+	 */
+	public void addPoints(int[] pixels) {
+		if (pixels.length < width * height)
+			throw new IllegalArgumentException(
+					"The pixel array is smaller than width * height");
+
+		if (parallel) {
+			addPointsParallel(pixels);
+			return;
+		}
 
-		// Now find edge points and update the hough array
-		for (int x = 0; x < image.getWidth(); x++) {
-			for (int y = 0; y < image.getHeight(); y++) {
+		int index = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, index++) {
 				// Find non-black pixels
-				if ((image.getRGB(x, y) & 0x000000ff) != 0) {
+				if ((pixels[index] & 0x000000ff) != 0) {
 					addPoint(x, y);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Collect the edge points and let fork-join workers vote for them. Every
+	 * worker votes for all points, but only within its own range of theta
+	 * values, i.e. its own rows of the hough array. The rows are disjoint, so
+	 * the workers never touch the same cell and the resulting hough array is
+	 * identical to the one produced by the serial version.
+	 */
+	private void addPointsParallel(int[] pixels) {
+		int[] xs = new int[64];
+		int[] ys = new int[64];
+		int n = 0;
+
+		int index = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, index++) {
+				if ((pixels[index] & 0x000000ff) != 0) {
+					if (n == xs.length) {
+						xs = Arrays.copyOf(xs, 2 * n);
+						ys = Arrays.copyOf(ys, 2 * n);
+					}
+					xs[n] = x;
+					ys[n] = y;
+					n++;
+				}
+			}
+		}
+		if (n == 0)
+			return;
+
+		ForkJoinPool.commonPool().invoke(new VoteTask(xs, ys, n, 0, maxTheta));
+		numPoints += n;
+		highestValue = -1;
+	}
+
+	/**
+	 * Votes for a set of points within a range of theta values, splitting the
+	 * range between sub tasks until it is small enough.
+	 */
+	@SuppressWarnings("serial")
+	private class VoteTask extends RecursiveAction {
+		private final int[] xs, ys;
+		private final int n, fromTheta, toTheta;
+
+		VoteTask(int[] xs, int[] ys, int n, int fromTheta, int toTheta) {
+			this.xs = xs;
+			this.ys = ys;
+			this.n = n;
+			this.fromTheta = fromTheta;
+			this.toTheta = toTheta;
+		}
+
+		@Override
+		protected void compute() {
+			if (toTheta - fromTheta > MIN_THETA_SPLIT) {
+				int middle = (fromTheta + toTheta) >>> 1;
+				invokeAll(new VoteTask(xs, ys, n, fromTheta, middle),
+						new VoteTask(xs, ys, n, middle, toTheta));
+				return;
+			}
+			for (int i = 0; i < n; i++) {
+				float dx = xs[i] - centerX;
+				float dy = ys[i] - centerY;
+				int offset = fromTheta * doubleHeight;
+				for (int t = fromTheta; t < toTheta; t++, offset += doubleHeight) {
+					int r = (int) ((dx * cosCache[t]) + (dy * sinCache[t]));
+					r += houghHeight;
+					if (r < 0 || r >= doubleHeight)
+						continue;
+					houghArray[offset + r]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Set whether {@link #addPoints(int[])} should vote in parallel, on the
+	 * common fork-join pool. The resulting hough array is the same in both
+	 * modes. The default is serial voting.
+	 * 
+	 * @param parallel
+	 *            True for parallel voting
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
 	/**
 	 * Adds a single point to the hough transform. You can use this method
 	 * directly if your data isn't represented as a buffered image.
 	 */
 	public void addPoint(int x, int y) {
+		float dx = x - centerX;
+		float dy = y - centerY;
 
 		// Go through each value of theta
-		for (int t = 0; t < maxTheta; t++) {
+		for (int t = 0, offset = 0; t < maxTheta; t++, offset += doubleHeight) {
 
 			// Work out the r values for each theta step
-			int r = (int) (((x - centerX) * cosCache[t]) + ((y - centerY) * sinCache[t]));
+			int r = (int) ((dx * cosCache[t]) + (dy * sinCache[t]));
 
 			// this copes with negative values of r
 			r += houghHeight;
@@ -171,11 +330,12 @@ public class HoughTransform extends Thread {
 				continue;
 
 			// Increment the hough array
-			houghArray[t][r]++;
+			houghArray[offset + r]++;
 
 		}
 
 		numPoints++;
+		highestValue = -1;
 	}
 
 	/**
@@ -188,9 +348,23 @@ public class HoughTransform extends Thread {
 	 *            the hough array
 	 */
 	public Vector<HoughLine> getLines(int threshold) {
+		return getLineData(threshold).getLines();
+	}
 
-		// Initialise the vector of lines that we'll return
-		Vector<HoughLine> lines = new Vector<HoughLine>(20);
+	/**
+	 * Once points have been added in some way this method extracts the lines,
+	 * without any intersections, see
+	 * {@link HoughUtilities#computeIntersections(int, int, HoughData, double)}
+	 * 
+	 * @param threshold
+	 *            The threshold above which lines are determined from the hough
+	 *            array
+	 * @return The lines, in the order of their angle and radius
+	 */
+	public HoughData getLineData(int threshold) {
+
+		// Initialise the lines that we'll return
+		HoughData lines = new HoughData(20, 16);
 
 		// Only proceed if the hough array is not empty
 		if (numPoints == 0)
@@ -202,9 +376,9 @@ public class HoughTransform extends Thread {
 					- neighbourhoodSize; r++) {
 
 				// Only consider points above threshold
-				if (houghArray[t][r] > threshold) {
+				if (houghArray[t * doubleHeight + r] > threshold) {
 
-					int peak = houghArray[t][r];
+					int peak = houghArray[t * doubleHeight + r];
 
 					// Check that this peak is indeed the local maxima
 					for (int dx = -neighbourhoodSize; dx <= neighbourhoodSize; dx++) {
@@ -215,7 +389,7 @@ public class HoughTransform extends Thread {
 								dt = dt + maxTheta;
 							else if (dt >= maxTheta)
 								dt = dt - maxTheta;
-							if (houghArray[dt][dr] > peak) {
+							if (houghArray[dt * doubleHeight + dr] > peak) {
 								// found a bigger point nearby, skip
 								continue loop;
 							}
@@ -225,8 +399,8 @@ public class HoughTransform extends Thread {
 					// calculate the true value of theta
 					double theta = t * thetaStep;
 
-					// add the line to the vector
-					lines.add(new HoughLine(theta, r));
+					// add the line
+					lines.addLine(theta, r);
 
 				}
 			}
@@ -239,14 +413,15 @@ public class HoughTransform extends Thread {
 	 * Gets the highest value in the hough array
 	 */
 	public int getHighestValue() {
+		if (highestValue >= 0)
+			return highestValue;
 		int max = 0;
-		for (int t = 0; t < maxTheta; t++) {
-			for (int r = 0; r < doubleHeight; r++) {
-				if (houghArray[t][r] > max) {
-					max = houghArray[t][r];
-				}
+		for (int i = 0; i < houghArray.length; i++) {
+			if (houghArray[i] > max) {
+				max = houghArray[i];
 			}
 		}
+		highestValue = max;
 		return max;
 	}
 
@@ -259,7 +434,8 @@ public class HoughTransform extends Thread {
 				BufferedImage.TYPE_INT_ARGB);
 		for (int t = 0; t < maxTheta; t++) {
 			for (int r = 0; r < doubleHeight; r++) {
-				double value = 255 * ((double) houghArray[t][r]) / max;
+				double value = 255 * ((double) houghArray[t * doubleHeight + r])
+						/ max;
 				int v = 255 - (int) value;
 				int c = new Color(v, v, v).getRGB();
 				image.setRGB(t, r, c);
@@ -6,10 +6,9 @@ import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Vector;
 
-import org.ejml.simple.SimpleMatrix;
-
 import common.ImageUtilities;
 
 /**
@@ -19,6 +18,14 @@ import common.ImageUtilities;
  */
 public class HoughUtilities {
 
+	// Margin, in radians, of the angle windows searched for intersecting
+	// lines, covering the rounding of the window bounds
+	private static final double WINDOW_MARGIN = 1e-9;
+
+	// Length, in pixels, of the arms of the cross examined around an
+	// intersection point when filtering
+	private static final int CROSS_SIZE = 20;
+
 	/**
 	 * Get the intersection points of a set of {@link HoughLine}. Only
 	 * intersection points of lines deviating with at most the given threshold
@@ -35,105 +42,205 @@ public class HoughUtilities {
 	 */
 	public static Vector<Intersection> getIntersections(BufferedImage img,
 			Vector<HoughLine> lines, double threshold) {
+		return getIntersections(img.getWidth(), img.getHeight(), lines,
+				threshold);
+	}
+
+	/**
+	 * Get the intersection points of a set of {@link HoughLine}. Only
+	 * intersection points of lines deviating with at most the given threshold
+	 * from being perpendicular to each other are returned.
+	 * 
+	 * @param width
+	 *            The width of the image that the Hough transform has been used
+	 *            on
+	 * @param height
+	 *            The height of the image that the Hough transform has been used
+	 *            on
+	 * @param lines
+	 *            The set of hough lines to examine
+	 * @param threshold
+	 *            Angular threshold, in degrees. Lines crossing each other with
+	 *            an angle of 90 - threshold degrees are considered to intersect
+	 * @return All intersection points (which pass the threshold filtering)
+	 */
+	public static Vector<Intersection> getIntersections(int width, int height,
+			Vector<HoughLine> lines, double threshold) {
+		int size = lines.size();
+		double[] theta = new double[size];
+		double[] r = new double[size];
+		for (int i = 0; i < size; i++) {
+			HoughLine line = lines.get(i);
+			theta[i] = line.theta;
+			r[i] = line.r;
+		}
+		HoughData data = new HoughData(0, size);
+		addIntersections(width, height, theta, r, size, threshold, data);
+
+		Vector<Intersection> intersections = new Vector<Intersection>(
+				data.getIntersectionCount());
+		int[] x = data.getX();
+		int[] y = data.getY();
+		int[] lineA = data.getLineA();
+		int[] lineB = data.getLineB();
+		for (int k = 0; k < data.getIntersectionCount(); k++) {
+			intersections.add(new Intersection(new Point(x[k], y[k]),
+					lineA[k], lineB[k], theta[lineA[k]], theta[lineB[k]]));
+		}
+		return intersections;
+	}
+
+	/**
+	 * Compute the intersection points of the lines of a {@link HoughData},
+	 * replacing the intersections it already holds. Only intersection points
+	 * of lines deviating with at most the given threshold from being
+	 * perpendicular to each other are added.
+	 * 
+	 * @param width
+	 *            The width of the image that the Hough transform has been used
+	 *            on
+	 * @param height
+	 *            The height of the image that the Hough transform has been used
+	 *            on
+	 * @param data
+	 *            The lines to examine, receiving the intersections
+	 * @param threshold
+	 *            Angular threshold, in degrees. Lines crossing each other with
+	 *            an angle of 90 - threshold degrees are considered to intersect
+	 */
+	public static void computeIntersections(int width, int height,
+			HoughData data, double threshold) {
+		int size = data.getLineCount();
+		int[] lineR = data.getR();
+		double[] r = new double[size];
+		for (int i = 0; i < size; i++) {
+			r[i] = lineR[i];
+		}
+		data.clearIntersections();
+		addIntersections(width, height, data.getTheta(), r, size, threshold,
+				data);
+	}
+
+	private static void addIntersections(int width, int height,
+			double[] theta, double[] r, int size, double threshold,
+			HoughData intersections) {
 		// Compute hough image data, used to transform hough coordinates into
 		// image coordinates
-		int height = img.getHeight();
-		int width = img.getWidth();
 		int houghHeight = (int) (Math.sqrt(2) * Math.max(height, width)) / 2;
 		int centerX = width / 2;
 		int centerY = height / 2;
 
-		// Convenience variable
-		double piHalf = Math.PI / 2;
-		SimpleMatrix A = new SimpleMatrix(2, 2);
-		SimpleMatrix b = new SimpleMatrix(2, 1);
+		double[] rho = new double[size];
+		double[] cos = new double[size];
+		double[] sin = new double[size];
+		for (int i = 0; i < size; i++) {
+			// Transform rho from local Hough representation to standard
+			// Hough representation
+			rho[i] = r[i] - houghHeight;
+			cos[i] = Math.cos(theta[i]);
+			sin[i] = Math.sin(theta[i]);
+		}
+		double minAngle = Math.toRadians(90 - threshold);
+		double maxAngle = Math.toRadians(90 + threshold);
+
+		// The lines sorted by angle, so that the lines close to perpendicular
+		// to a line are found by binary search instead of by comparing all
+		// pairs. The windows searched are slightly wider than the threshold,
+		// the exact test is made on every candidate.
+		double[] sortedTheta = new double[size];
+		int[] sortedIndex = new int[size];
+		sortByTheta(theta, size, sortedTheta, sortedIndex);
+		int[] candidates = new int[size];
 
-		Vector<Intersection> intersections = new Vector<Intersection>();
 		// Iterate through all possible intersections (all pairs only considered
-		// once)
-		for (int i = 0; i < lines.size(); i++) {
-			for (int j = i + 1; j < lines.size(); j++) {
-
-				double thetaI = lines.get(i).theta;
-				double thetaJ = lines.get(j).theta;
-				// Transform rho from local Hough representation to standard
-				// Hough representation
-				double rhoI = lines.get(i).r - houghHeight;
-				double rhoJ = lines.get(j).r - houghHeight;
-
-				// Filter out the lines which intersect each other with an angle
-				// within the boundaries of the threshold
-				if (Math.abs(thetaI - thetaJ) >= Math.toRadians(90 - threshold)
-						&& Math.abs(thetaI - thetaJ) <= Math
-								.toRadians(90 + threshold)) {
-
-					double deltaXI;
-					double deltaYI;
-					// Compute the direction of the two lines, and save one of
-					// the (deltaXI and deltaYI) for later computations
-
-					/*
-					 * |deltaXI deltaXJ| A = | | |deltaYI deltaYJ|
-					 */
-					if (thetaI >= 0) {
-						deltaXI = -Math.cos(piHalf - thetaI);
-						deltaYI = Math.sin(piHalf + thetaI);
-						A.set(0, 0, deltaXI);
-						A.set(1, 0, deltaYI);
-					} else {
-						deltaXI = -Math.cos(-piHalf - thetaI);
-						deltaYI = Math.sin(-piHalf - thetaI);
-						A.set(0, 0, -Math.cos(-piHalf - thetaI));
-						A.set(1, 0, Math.sin(-piHalf - thetaI));
-					}
-					if (thetaJ >= 0) {
-						A.set(0, 1, -Math.cos(piHalf - thetaJ));
-						A.set(1, 1, Math.sin(piHalf + thetaJ));
-					} else {
-						A.set(0, 1, -Math.cos(-piHalf - thetaJ));
-						A.set(1, 1, Math.sin(-piHalf - thetaJ));
-					}
-
-					double xOnLineI = rhoI * Math.cos(thetaI);
-					double yOnLineI = rhoI * Math.sin(thetaI);
-					double yOnLineJ = rhoJ * Math.sin(thetaJ);
-					double xOnLineJ = rhoJ * Math.cos(thetaJ);
-
-					/*
-					 * | (xOnLineJ - xOnLineI) | b = | | | (yOnLineJ - yOnLineI)
-					 * |
-					 */
-					b.set(0, 0, xOnLineJ - xOnLineI);
-					b.set(1, 0, yOnLineJ - yOnLineI);
-
-					/*
-					 * The intersection point is calculated by solving (with
-					 * respect to t and u) the following linear system
-					 * 
-					 * Point on lineI + (direction of lineI)*t = Point on lineJ
-					 * + (direction of lineJ)*u
-					 * 
-					 * Get the intersection point by traveling along lineI the
-					 * distance t from the starting point.
-					 */
-					SimpleMatrix sol = A.solve(b);
-					int x = (int) Math
-							.round(xOnLineI + sol.get(0, 0) * deltaXI);
-					int y = (int) Math
-							.round(yOnLineI + sol.get(0, 0) * deltaYI);
-
-					// Change coordinates to image representation (position from
-					// upper left corner)
-					x += centerX;
-					y += centerY;
-
-					intersections.add(new Intersection(new Point(x, y), i, j,
-							thetaI, thetaJ));
-				}
+		// once), in the order of the line indices
+		for (int i = 0; i < size; i++) {
+			int count = 0;
+			if (minAngle > WINDOW_MARGIN) {
+				count = addCandidates(i, theta[i] + minAngle - WINDOW_MARGIN,
+						theta[i] + maxAngle + WINDOW_MARGIN, sortedTheta,
+						sortedIndex, candidates, count);
+				count = addCandidates(i, theta[i] - maxAngle - WINDOW_MARGIN,
+						theta[i] - minAngle + WINDOW_MARGIN, sortedTheta,
+						sortedIndex, candidates, count);
+			} else {
+				// The two windows overlap
+				count = addCandidates(i, theta[i] - maxAngle - WINDOW_MARGIN,
+						theta[i] + maxAngle + WINDOW_MARGIN, sortedTheta,
+						sortedIndex, candidates, count);
+			}
+			Arrays.sort(candidates, 0, count);
+
+			for (int k = 0; k < count; k++) {
+				int j = candidates[k];
+				// Filter out the lines which intersect each other with an
+				// angle within the boundaries of the threshold
+				double delta = Math.abs(theta[i] - theta[j]);
+				if (delta < minAngle || delta > maxAngle)
+					continue;
+
+				/*
+				 * The intersection point solves x cos(thetaI) + y sin(thetaI) =
+				 * rhoI and x cos(thetaJ) + y sin(thetaJ) = rhoJ, with the
+				 * determinant sin(thetaJ - thetaI), which is far from zero for
+				 * lines this close to perpendicular.
+				 */
+				double det = cos[i] * sin[j] - sin[i] * cos[j];
+				int x = (int) Math.round((rho[i] * sin[j] - rho[j] * sin[i])
+						/ det);
+				int y = (int) Math.round((rho[j] * cos[i] - rho[i] * cos[j])
+						/ det);
+
+				// Change coordinates to image representation (position from
+				// upper left corner)
+				intersections.addIntersection(x + centerX, y + centerY, i, j);
+			}
+		}
+	}
 
+	/**
+	 * Sort the angles of the lines, keeping the index of the line of every
+	 * angle
+	 */
+	private static void sortByTheta(double[] theta, int size,
+			double[] sortedTheta, int[] sortedIndex) {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		final double[] keys = theta;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(keys[a], keys[b]);
 			}
+		});
+		for (int i = 0; i < order.length; i++) {
+			sortedIndex[i] = order[i];
+			sortedTheta[i] = theta[order[i]];
 		}
-		return intersections;
+	}
+
+	/**
+	 * Add the lines after line i with an angle from min to max to the
+	 * candidates
+	 * 
+	 * @return The new number of candidates
+	 */
+	private static int addCandidates(int i, double min, double max,
+			double[] sortedTheta, int[] sortedIndex, int[] candidates,
+			int count) {
+		int from = Arrays.binarySearch(sortedTheta, min);
+		if (from < 0)
+			from = -from - 1;
+		// Equal angles may be found anywhere in a run
+		while (from > 0 && sortedTheta[from - 1] >= min)
+			from--;
+		for (int k = from; k < sortedTheta.length && sortedTheta[k] <= max; k++) {
+			if (sortedIndex[k] > i)
+				candidates[count++] = sortedIndex[k];
+		}
+		return count;
 	}
 
 	/**
@@ -153,154 +260,130 @@ public class HoughUtilities {
 	 */
 	public static Vector<Intersection> filterIntersections(BufferedImage img,
 			Vector<Intersection> intersections, int threshold) {
-		Color bkgColor = ImageUtilities.getImageBorderColor(img);
+		int[] bkg = getBackground(img);
+		Raster imgData = img.getRaster();
+		int[][] samples = new int[3][CROSS_SIZE];
 		Vector<Intersection> filteredInter = new Vector<Intersection>();
-		Raster imgData = img.getData();
-		int width = img.getWidth();
-		int height = img.getHeight();
-		// Convenience constants, for improved readability
-		final int R = 0, G = 1, B = 2;
-		final int X = 0, Y = 1;
-		
-		intersection:
-		// Go through all intersections
 		for (Intersection inter : intersections) {
-			// Get the angles of the lines that are intersecting
-			double angleOne = Math.abs(inter.angleOne);
-			double angleTwo = Math.abs(inter.angleTwo);
-			// Intersection point
 			Point p = inter.getIntersection();
+			if (isDocumentCorner(imgData, bkg, p.x, p.y, inter.angleOne,
+					inter.angleTwo, threshold, samples))
+				filteredInter.add(inter);
+		}
+		return filteredInter;
+	}
 
-			// Start creating a cross, centered at the intersection point and
-			// with its lines following the hough lines
-			// The cross is used to identify the intersection point's
-			// neighboring pixel colors in different directions.
-			int crossSize = 20;
-			int[][] cOne = null, cTwo = null, cThree = null, cFour = null;
-
-			boolean crossDone = false;
-			while (!crossDone) {
-				cOne = new int[crossSize][2];
-				cTwo = new int[crossSize][2];
-				cThree = new int[crossSize][2];
-				cFour = new int[crossSize][2];
-
-				// Compute all the coordinates for the cross
-				for (int i = 0; i < crossSize; i++) {
-					cOne[i][X] = (int) (p.x + i * Math.cos(angleOne));
-					cOne[i][Y] = (int) (p.y + i * Math.sin(angleOne));
-					cTwo[i][X] = (int) (p.x - i * Math.cos(angleOne));
-					cTwo[i][Y] = (int) (p.y - i * Math.sin(angleOne));
-					cThree[i][X] = (int) (p.x + i * Math.cos(angleTwo));
-					cThree[i][Y] = (int) (p.y + i * Math.sin(angleTwo));
-					cFour[i][X] = (int) (p.x - i * Math.cos(angleTwo));
-					cFour[i][Y] = (int) (p.y - i * Math.sin(angleTwo));
-				}
+	/**
+	 * Filter out intersection points that are not close to a pixel with similar
+	 * color as the border.
+	 * 
+	 * @param img
+	 *            The image that has been used to find the original
+	 *            intersections
+	 * @param data
+	 *            The lines and their intersections
+	 * @param threshold
+	 *            Color threshold value. If there is no neighborhood with color,
+	 *            within the boundaries of the threshold, close to the border
+	 *            color, the intersection point is remove
+	 * @return The lines and the intersections that remain
+	 */
+	public static HoughData filterIntersections(BufferedImage img,
+			HoughData data, int threshold) {
+		int[] bkg = getBackground(img);
+		Raster imgData = img.getRaster();
+		int[][] samples = new int[3][CROSS_SIZE];
+		double[] theta = data.getTheta();
+		int[] x = data.getX();
+		int[] y = data.getY();
+		int[] lineA = data.getLineA();
+		int[] lineB = data.getLineB();
+		HoughData filtered = new HoughData(data, 16);
+		for (int k = 0; k < data.getIntersectionCount(); k++) {
+			if (isDocumentCorner(imgData, bkg, x[k], y[k], theta[lineA[k]],
+					theta[lineB[k]], threshold, samples))
+				filtered.addIntersection(x[k], y[k], lineA[k], lineB[k]);
+		}
+		return filtered;
+	}
 
-				// Verify that the cross doesn't extends outside the image
-				// boundaries. If so, make the cross smaller, and try again.
-				if (cOne[crossSize - 1][X] >= width
-						|| cOne[crossSize - 1][X] < 0
-						|| cOne[crossSize - 1][Y] >= height
-						|| cOne[crossSize - 1][Y] < 0
-						|| cTwo[crossSize - 1][X] >= width
-						|| cTwo[crossSize - 1][X] < 0
-						|| cTwo[crossSize - 1][Y] >= height
-						|| cTwo[crossSize - 1][Y] < 0
-						|| cThree[crossSize - 1][X] >= width
-						|| cThree[crossSize - 1][X] < 0
-						|| cThree[crossSize - 1][Y] >= height
-						|| cThree[crossSize - 1][Y] < 0
-						|| cFour[crossSize - 1][X] >= width
-						|| cFour[crossSize - 1][X] < 0
-						|| cFour[crossSize - 1][Y] >= height
-						|| cFour[crossSize - 1][Y] < 0) {
-					crossDone = false;
-					if (crossSize > 1)
-						crossSize--;
-					else
-						continue intersection;
-				} else {
-					crossDone = true;
-				}
-			}
+	private static int[] getBackground(BufferedImage img) {
+		Color bkgColor = ImageUtilities.getImageBorderColor(img);
+		return new int[] { bkgColor.getRed(), bkgColor.getGreen(),
+				bkgColor.getBlue() };
+	}
 
-			// Retrieve the cross's colors
-			int[][] cOneColor = new int[crossSize][3];
-			int[][] cTwoColor = new int[crossSize][3];
-			int[][] cThreeColor = new int[crossSize][3];
-			int[][] cFourColor = new int[crossSize][3];
-			for (int i = 0; i < crossSize; i++) {
-				imgData.getPixel(cOne[i][X], cOne[i][Y], cOneColor[i]);
-				imgData.getPixel(cTwo[i][X], cTwo[i][Y], cTwoColor[i]);
-				imgData.getPixel(cThree[i][X], cThree[i][Y], cThreeColor[i]);
-				imgData.getPixel(cFour[i][X], cFour[i][Y], cFourColor[i]);
-			}
-			// Separate R,G and B color channel into different arrays
-			int[] cOneR = new int[crossSize];
-			int[] cOneG = new int[crossSize];
-			int[] cOneB = new int[crossSize];
-			int[] cTwoR = new int[crossSize];
-			int[] cTwoG = new int[crossSize];
-			int[] cTwoB = new int[crossSize];
-			int[] cThreeR = new int[crossSize];
-			int[] cThreeG = new int[crossSize];
-			int[] cThreeB = new int[crossSize];
-			int[] cFourR = new int[crossSize];
-			int[] cFourG = new int[crossSize];
-			int[] cFourB = new int[crossSize];
+	/**
+	 * Check if an intersection point could be a document corner, by the
+	 * colors of a cross centered at the point, with its arms following the
+	 * intersecting lines. The cross is used to identify the intersection
+	 * point's neighboring pixel colors in different directions. Unless the
+	 * median color of at least one arm is within the threshold of the
+	 * background color, the point is not a corner.
+	 * 
+	 * @param samples
+	 *            Room for the colors of one arm, three arrays of
+	 *            {@link #CROSS_SIZE} values
+	 */
+	private static boolean isDocumentCorner(Raster imgData, int[] bkg, int x,
+			int y, double angleOne, double angleTwo, int threshold,
+			int[][] samples) {
+		// Get the directions of the lines that are intersecting
+		angleOne = Math.abs(angleOne);
+		angleTwo = Math.abs(angleTwo);
+		double cosOne = Math.cos(angleOne), sinOne = Math.sin(angleOne);
+		double cosTwo = Math.cos(angleTwo), sinTwo = Math.sin(angleTwo);
+		double[] dx = { cosOne, -cosOne, cosTwo, -cosTwo };
+		double[] dy = { sinOne, -sinOne, sinTwo, -sinTwo };
+
+		// Verify that the cross doesn't extends outside the image
+		// boundaries. If so, make the cross smaller, and try again.
+		int crossSize = CROSS_SIZE;
+		while (!isCrossInside(imgData, x, y, dx, dy, crossSize - 1)) {
+			if (crossSize > 1)
+				crossSize--;
+			else
+				return false;
+		}
+
+		int[] pixel = new int[3];
+		for (int arm = 0; arm < 4; arm++) {
+			// Retrieve the arm's colors, separated by color channel
 			for (int i = 0; i < crossSize; i++) {
-				cOneR[i] = cOneColor[i][R];
-				cOneG[i] = cOneColor[i][G];
-				cOneB[i] = cOneColor[i][B];
-				cTwoR[i] = cTwoColor[i][R];
-				cTwoG[i] = cTwoColor[i][G];
-				cTwoB[i] = cTwoColor[i][B];
-				cThreeR[i] = cThreeColor[i][R];
-				cThreeG[i] = cThreeColor[i][G];
-				cThreeB[i] = cThreeColor[i][B];
-				cFourR[i] = cFourColor[i][R];
-				cFourG[i] = cFourColor[i][G];
-				cFourB[i] = cFourColor[i][B];
-			}
-			// Compute the median of the four cross's lines
-			int[] medianOne = { median(cOneR), median(cOneG), median(cOneB) };
-			int[] medianTwo = { median(cTwoR), median(cTwoG), median(cTwoB) };
-			int[] medianThree = { median(cThreeR), median(cThreeG),
-					median(cThreeB) };
-			int[] medianFour = { median(cFourR), median(cFourG), median(cFourB) };
-
-			int bkgRed = bkgColor.getRed();
-			int bkgBlue = bkgColor.getBlue();
-			int bkgGreen = bkgColor.getGreen();
-
-			// If not at least one of the lines aren't within the color
-			// threshold, it is filtered out
-			int isNotDocumentcorner = 0;
-			if (Math.abs(medianOne[R] - bkgRed) > threshold
-					|| Math.abs(medianOne[G] - bkgGreen) > threshold
-					|| Math.abs(medianOne[B] - bkgBlue) > threshold) {
-				isNotDocumentcorner++;
-			}
-			if (Math.abs(medianTwo[R] - bkgRed) > threshold
-					|| Math.abs(medianTwo[G] - bkgGreen) > threshold
-					|| Math.abs(medianTwo[B] - bkgBlue) > threshold) {
-				isNotDocumentcorner++;
-			}
-			if (Math.abs(medianThree[R] - bkgRed) > threshold
-					|| Math.abs(medianThree[G] - bkgGreen) > threshold
-					|| Math.abs(medianThree[B] - bkgBlue) > threshold) {
-				isNotDocumentcorner++;
+				imgData.getPixel((int) (x + i * dx[arm]),
+						(int) (y + i * dy[arm]), pixel);
+				for (int c = 0; c < 3; c++) {
+					samples[c][i] = pixel[c];
+				}
 			}
-			if (Math.abs(medianFour[R] - bkgRed) > threshold
-					|| Math.abs(medianFour[G] - bkgGreen) > threshold
-					|| Math.abs(medianFour[B] - bkgBlue) > threshold) {
-				isNotDocumentcorner++;
+			// The arm is within the color threshold if the medians of all
+			// channels are
+			boolean isBackground = true;
+			for (int c = 0; c < 3 && isBackground; c++) {
+				Arrays.sort(samples[c], 0, crossSize);
+				if (Math.abs(samples[c][crossSize / 2] - bkg[c]) > threshold)
+					isBackground = false;
 			}
-			if (isNotDocumentcorner < 4)
-				filteredInter.add(inter);
+			if (isBackground)
+				return true;
 		}
-		return filteredInter;
+		return false;
+	}
+
+	/**
+	 * Check that the ends, at the given distance from the center, of all arms
+	 * of a cross lie inside the image
+	 */
+	private static boolean isCrossInside(Raster imgData, int x, int y,
+			double[] dx, double[] dy, int distance) {
+		for (int arm = 0; arm < 4; arm++) {
+			int endX = (int) (x + distance * dx[arm]);
+			int endY = (int) (y + distance * dy[arm]);
+			if (endX >= imgData.getWidth() || endX < 0
+					|| endY >= imgData.getHeight() || endY < 0)
+				return false;
+		}
+		return true;
 	}
 
 	/**
@@ -358,43 +441,143 @@ public class HoughUtilities {
 	 */
 	public static HoughData runHoughIterations(
 			BufferedImage img, int iters, double hThresh, double lThresh) {
-	
+		checkIterationArguments(iters, hThresh, lThresh);
+
+		HoughTransform h = new HoughTransform(img.getWidth(), img.getHeight());
+		h.addPoints(img);
+
+		return runHoughIterations(h, img.getWidth(), img.getHeight(), iters,
+				hThresh, lThresh);
+	}
+
+	/**
+	 * Run Hough Transformation on an edge map, decreasing the line extraction
+	 * threshold every iteration. The points are voted directly from the edge
+	 * data, without going through a {@link BufferedImage}.
+	 * 
+	 * @param edges
+	 *            The edges, packed ARGB pixels in row-major order where all
+	 *            non-black pixels are edges (see
+	 *            {@link imageanalysis.EdgeDetector#getEdgesData()})
+	 * @param width
+	 *            The width of the edge map
+	 * @param height
+	 *            The height of the edge map
+	 * @param iters
+	 *            Number of Hough transformation iterations (>= 1)
+	 * @param hThresh
+	 *            High threshold, (percentile of highest hough peak value)
+	 * @param lThresh
+	 *            Low threshold, (percentile of highest hough peak value)
+	 * @return The intersection points and hough lines
+	 */
+	public static HoughData runHoughIterations(int[] edges, int width,
+			int height, int iters, double hThresh, double lThresh) {
+		return runHoughIterations(edges, width, height, iters, hThresh,
+				lThresh, false);
+	}
+
+	/**
+	 * Run Hough Transformation on an edge map, decreasing the line extraction
+	 * threshold every iteration. The points are voted directly from the edge
+	 * data, either serially or in parallel (see
+	 * {@link HoughTransform#setParallel(boolean)}). Both modes give the same
+	 * result.
+	 * 
+	 * @param edges
+	 *            The edges, packed ARGB pixels in row-major order where all
+	 *            non-black pixels are edges
+	 * @param width
+	 *            The width of the edge map
+	 * @param height
+	 *            The height of the edge map
+	 * @param iters
+	 *            Number of Hough transformation iterations (>= 1)
+	 * @param hThresh
+	 *            High threshold, (percentile of highest hough peak value)
+	 * @param lThresh
+	 *            Low threshold, (percentile of highest hough peak value)
+	 * @param parallel
+	 *            True if the points should be voted in parallel
+	 * @return The intersection points and hough lines
+	 */
+	public static HoughData runHoughIterations(int[] edges, int width,
+			int height, int iters, double hThresh, double lThresh,
+			boolean parallel) {
+		checkIterationArguments(iters, hThresh, lThresh);
+
+		HoughTransform h = new HoughTransform(width, height);
+		h.setParallel(parallel);
+		h.addPoints(edges);
+
+		return runHoughIterations(h, width, height, iters, hThresh, lThresh);
+	}
+
+	/**
+	 * Run the line extraction iterations on a Hough transform that the edge
+	 * points already have been added to. Since the transform is left
+	 * untouched, it can be used for several calls with different thresholds
+	 * without voting for the points again.
+	 * 
+	 * @param h
+	 *            The hough transform, with the edge points added
+	 * @param iters
+	 *            Number of Hough transformation iterations (>= 1)
+	 * @param hThresh
+	 *            High threshold, (percentile of highest hough peak value)
+	 * @param lThresh
+	 *            Low threshold, (percentile of highest hough peak value)
+	 * @return The intersection points and hough lines
+	 */
+	public static HoughData runHoughIterations(HoughTransform h, int iters,
+			double hThresh, double lThresh) {
+		checkIterationArguments(iters, hThresh, lThresh);
+
+		return runHoughIterations(h, h.getWidth(), h.getHeight(), iters,
+				hThresh, lThresh);
+	}
+
+	private static void checkIterationArguments(int iters, double hThresh,
+			double lThresh) {
 		if (iters <= 0 || hThresh <= 0 || hThresh > 1 || lThresh < 0
 				|| lThresh > 1 || hThresh < lThresh)
 			throw new IllegalArgumentException(
 					"Invalid arguments, iters, hThresh (> lThresh) must all be greater than zero");
+	}
 
-		Vector<HoughLine> lines = null;
-		Vector<Intersection> inters = null;
-
-		HoughTransform h = new HoughTransform(img.getWidth(), img.getHeight());
-		h.addPoints(img);
+	private static HoughData runHoughIterations(HoughTransform h, int width,
+			int height, int iters, double hThresh, double lThresh) {
+		HoughData data = null;
 
 		hThresh = hThresh * h.getHighestValue();
 		lThresh = lThresh * h.getHighestValue();
 
 		double threshStep;
-		if (iters > 1)
+		if (iters > 1 && hThresh > lThresh)
 			threshStep = (hThresh - lThresh) / (iters - 1);
 		else
+			// A single iteration, also when nothing was voted for
 			threshStep = hThresh + 1;
 		for (double threshold = hThresh; threshold >= lThresh; threshold = threshold
 				- threshStep) {
 
-			lines = h.getLines((int) threshold);
-			inters = getIntersections(img, lines, 2);
+			data = h.getLineData((int) threshold);
+			computeIntersections(width, height, data, 2);
 
 			// If there are less than 4 intersections, go to next the iteration
-			if (inters.size() < 4) {
+			int numInters = data.getIntersectionCount();
+			if (numInters < 4) {
 				continue;
 			}
 
 			// Check how many lines that gets intersected by at least 2 unique
 			// lines
-			int[] distinctLines = new int[lines.size()];
-			for (Intersection inter : inters) {
-				distinctLines[inter.lineIndexOne]++;
-				distinctLines[inter.lineIndexTwo]++;
+			int[] distinctLines = new int[data.getLineCount()];
+			int[] lineA = data.getLineA();
+			int[] lineB = data.getLineB();
+			for (int k = 0; k < numInters; k++) {
+				distinctLines[lineA[k]]++;
+				distinctLines[lineB[k]]++;
 			}
 			int numDistinctLines = 0;
 			for (int i = 0; i < distinctLines.length; i++) {
@@ -409,8 +592,7 @@ public class HoughUtilities {
 				break;
 		}
 
-
-		return new HoughData(lines, inters);
+		return data;
 	}
 
 	/**
@@ -429,9 +611,4 @@ public class HoughUtilities {
 			line.draw(img, color.getRGB());
 		}
 	}
-
-	private static int median(int[] array) {
-		Arrays.sort(array);
-		return array[array.length / 2];
-	}
 }
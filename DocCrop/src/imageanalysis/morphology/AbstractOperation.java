@@ -1,6 +1,9 @@
 package imageanalysis.morphology;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
 
 /**
  * Abstract morphological base class.
@@ -11,6 +14,21 @@ import java.awt.image.BufferedImage;
 public abstract class AbstractOperation implements MorphologicalOperation {
 
 	protected int shapeSize;
+	protected STRUCTURING_ELEMENT_SHAPE shape;
+
+	public STRUCTURING_ELEMENT_SHAPE getShape() {
+		return shape;
+	}
+
+	/**
+	 * Describes the operation and its structuring element, e.g.
+	 * "Closing(SQUARE, 1)"
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(" + shape + ", " + shapeSize
+				+ ")";
+	}
 
 	/**
 	 * Constructs a structuring element shape. The values in the structuring
@@ -60,6 +78,132 @@ public abstract class AbstractOperation implements MorphologicalOperation {
 		return structElem;
 	}
 
+	/**
+	 * Replaces every pixel with the highest, or lowest, value within the
+	 * structuring element centered on it. Near the borders the structuring
+	 * element is moved inside the image instead of being cut off.
+	 * <p>
+	 * The structuring element is separated into a horizontal and a vertical
+	 * line, which are applied one after another using the van Herk/Gil-Werman
+	 * algorithm. The cost per pixel is therefore constant, independent of the
+	 * shape size. A {@link STRUCTURING_ELEMENT_SHAPE#CIRCLE} is treated as a
+	 * square.
+	 * <p>
+	 * Every line is buffered before it is written, so the source and the
+	 * destination may be the same image. This lets two operations be chained
+	 * without an intermediate image.
+	 * 
+	 * @param img
+	 *            The image to operate on, of type TYPE_BYTE_GRAY
+	 * @param result
+	 *            The image to write the result to, a TYPE_BYTE_GRAY image of
+	 *            the same size (may be <code>img</code>)
+	 * @param shape
+	 *            The shape of the structuring element
+	 * @param shapeSize
+	 *            The size from the middle of the shape to exterior of the
+	 *            shape. (Total size = 2*shapeSize+1)
+	 * @param max
+	 *            True to pick the highest value (dilation), false to pick the
+	 *            lowest value (erosion)
+	 * @param buffers
+	 *            Provides the line buffers
+	 */
+	protected static void rankFilter(BufferedImage img, BufferedImage result,
+			STRUCTURING_ELEMENT_SHAPE shape, int shapeSize, boolean max,
+			MorphologyBuffers buffers) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+
+		// Work directly on the image data, the source may be a sub image so
+		// its offset and scanline stride must be taken into account
+		Raster raster = img.getRaster();
+		ComponentSampleModel sm = (ComponentSampleModel) raster
+				.getSampleModel();
+		DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+		byte[] src = buffer.getData();
+		int srcOffset = buffer.getOffset()
+				+ sm.getOffset(raster.getMinX()
+						- raster.getSampleModelTranslateX(), raster.getMinY()
+						- raster.getSampleModelTranslateY());
+		int srcStride = sm.getScanlineStride();
+		byte[] dst = ((DataBufferByte) result.getRaster().getDataBuffer())
+				.getData();
+
+		boolean horizontal = shape != STRUCTURING_ELEMENT_SHAPE.VERTICAL_LINE;
+		boolean vertical = shape != STRUCTURING_ELEMENT_SHAPE.HORIZONTAL_LINE;
+		int[] prefix = buffers.getPrefix(Math.max(width, height));
+		int[] suffix = buffers.getSuffix(prefix.length);
+
+		if (horizontal) {
+			for (int y = 0; y < height; y++) {
+				filterLine(src, srcOffset + y * srcStride, 1, dst, y * width,
+						1, width, shapeSize, max, prefix, suffix);
+			}
+			// The vertical pass continues from the horizontal result
+			src = dst;
+			srcOffset = 0;
+			srcStride = width;
+		}
+		if (vertical) {
+			for (int x = 0; x < width; x++) {
+				filterLine(src, srcOffset + x, srcStride, dst, x, width,
+						height, shapeSize, max, prefix, suffix);
+			}
+		}
+	}
+
+	/**
+	 * Running max/min filter of one line of pixels, using the van
+	 * Herk/Gil-Werman algorithm. The line is divided into blocks of the window
+	 * size, and the running values from the start and the end of every block
+	 * are computed. Any window then covers the end of one block and the start
+	 * of the next, so its value is found with one comparison. The source and
+	 * destination may be the same array, the line is buffered before anything
+	 * is written.
+	 */
+	private static void filterLine(byte[] src, int srcOffset, int srcStep,
+			byte[] dst, int dstOffset, int dstStep, int length, int radius,
+			boolean max, int[] prefix, int[] suffix) {
+		int size = Math.min(2 * radius + 1, length);
+		int lastWindow = length - size;
+
+		for (int i = 0, s = srcOffset; i < length; i++, s += srcStep) {
+			suffix[i] = src[s] & 0xff;
+		}
+
+		// Running values from the start of each block
+		for (int i = 0; i < length; i++) {
+			int v = suffix[i];
+			if (i % size != 0)
+				v = max ? Math.max(v, prefix[i - 1]) : Math.min(v,
+						prefix[i - 1]);
+			prefix[i] = v;
+		}
+		// Running values from the end of each block
+		for (int i = length - 2; i >= 0; i--) {
+			if ((i + 1) % size != 0)
+				suffix[i] = max ? Math.max(suffix[i], suffix[i + 1]) : Math
+						.min(suffix[i], suffix[i + 1]);
+		}
+		// The window starting at i, stored in place of the prefix values that
+		// are no longer needed
+		for (int i = 0; i <= lastWindow; i++) {
+			int a = suffix[i];
+			int b = prefix[i + size - 1];
+			prefix[i] = max ? Math.max(a, b) : Math.min(a, b);
+		}
+
+		for (int i = 0, d = dstOffset; i < length; i++, d += dstStep) {
+			int window = i - radius;
+			if (window < 0)
+				window = 0;
+			else if (window > lastWindow)
+				window = lastWindow;
+			dst[d] = (byte) prefix[window];
+		}
+	}
+
 	/**
 	 * Execute the morphological operation on the supplied image
 	 * 
@@ -67,7 +211,22 @@ public abstract class AbstractOperation implements MorphologicalOperation {
 	 *            The image to operate on
 	 * @return The morphological adjusted image
 	 */
-	public abstract BufferedImage execute(BufferedImage img);
+	public BufferedImage execute(BufferedImage img) {
+		return execute(img, new MorphologyBuffers());
+	}
+
+	/**
+	 * Execute the morphological operation on the supplied image, using the
+	 * supplied buffers
+	 * 
+	 * @param img
+	 *            The image to operate on
+	 * @param buffers
+	 *            The buffers to work in, the result is stored in them
+	 * @return The morphological adjusted image
+	 */
+	public abstract BufferedImage execute(BufferedImage img,
+			MorphologyBuffers buffers);
 	
 	public int getShapeSize() {
 		return shapeSize;
@@ -15,8 +15,6 @@ import java.awt.image.BufferedImage;
  */
 public class Closing extends AbstractOperation {
 
-	private STRUCTURING_ELEMENT_SHAPE shape;
-
 	public Closing() {
 		shapeSize = 2;
 		shape = STRUCTURING_ELEMENT_SHAPE.SQUARE;
@@ -31,17 +29,16 @@ public class Closing extends AbstractOperation {
 	 * @see AbstractOperation
 	 */
 	@Override
-	public BufferedImage execute(BufferedImage img) {
+	public BufferedImage execute(BufferedImage img, MorphologyBuffers buffers) {
 		if (img.getType() != BufferedImage.TYPE_BYTE_GRAY)
 			throw new IllegalArgumentException(
 					"The image must be of type TYPE_BYTE_GRAY");
 
-		BufferedImage dilatedImg, closedImg;
-		Erosion erosion = new Erosion(shape, shapeSize);
-		Dilation dilation = new Dilation(shape, shapeSize);
-
-		dilatedImg = dilation.execute(img);
-		closedImg = erosion.execute(dilatedImg);
+		// Dilate into the result image, then erode it in place
+		BufferedImage closedImg = buffers.getImage(img.getWidth(),
+				img.getHeight());
+		rankFilter(img, closedImg, shape, shapeSize, true, buffers);
+		rankFilter(closedImg, closedImg, shape, shapeSize, false, buffers);
 
 		return closedImg;
 	}
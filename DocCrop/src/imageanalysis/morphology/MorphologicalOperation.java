@@ -20,5 +20,12 @@ public interface MorphologicalOperation {
 
 	public BufferedImage execute(BufferedImage img);
 
+	/**
+	 * Execute the operation using the supplied buffers instead of allocating
+	 * new ones. The returned image may be owned by the buffers, and is then
+	 * overwritten by the next operation that uses them.
+	 */
+	public BufferedImage execute(BufferedImage img, MorphologyBuffers buffers);
+
 	public int getShapeSize();
 }
@@ -0,0 +1,44 @@
+package imageanalysis.morphology;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Working memory for morphological operations. Passing the same buffers to
+ * every call of {@link MorphologicalOperation#execute(BufferedImage, MorphologyBuffers)}
+ * lets the operations reuse the result image and line buffers, so that no
+ * memory is allocated once the buffers have grown to the size of the images.
+ * 
+ * Note that the result image is shared, an image returned by an operation is
+ * overwritten by the next operation using the same buffers. The buffers must
+ * not be used by more than one thread at a time.
+ */
+public class MorphologyBuffers {
+
+	private BufferedImage image;
+	private int[] prefix = new int[0];
+	private int[] suffix = new int[0];
+
+	/**
+	 * Get the result image, a TYPE_BYTE_GRAY image of the requested size. The
+	 * image is only reallocated when the size changes.
+	 */
+	BufferedImage getImage(int width, int height) {
+		if (image == null || image.getWidth() != width
+				|| image.getHeight() != height)
+			image = new BufferedImage(width, height,
+					BufferedImage.TYPE_BYTE_GRAY);
+		return image;
+	}
+
+	int[] getPrefix(int length) {
+		if (prefix.length < length)
+			prefix = new int[length];
+		return prefix;
+	}
+
+	int[] getSuffix(int length) {
+		if (suffix.length < length)
+			suffix = new int[length];
+		return suffix;
+	}
+}
@@ -15,9 +15,6 @@ import java.awt.image.BufferedImage;
  */
 public class None extends AbstractOperation {
 
-	@SuppressWarnings("unused")
-	private STRUCTURING_ELEMENT_SHAPE shape;
-
 	public None() {
 		shapeSize = 2;
 		shape = STRUCTURING_ELEMENT_SHAPE.SQUARE;
@@ -32,7 +29,7 @@ public class None extends AbstractOperation {
 	 * @see AbstractOperation
 	 */
 	@Override
-	public BufferedImage execute(BufferedImage img) {
+	public BufferedImage execute(BufferedImage img, MorphologyBuffers buffers) {
 		if (img.getType() != BufferedImage.TYPE_BYTE_GRAY)
 			throw new IllegalArgumentException(
 					"The image must be of type TYPE_BYTE_GRAY");
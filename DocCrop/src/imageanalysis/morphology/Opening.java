@@ -17,8 +17,6 @@ public class Opening extends AbstractOperation {
 
 	
 
-	private STRUCTURING_ELEMENT_SHAPE shape;
-
 	public Opening() {
 		shapeSize = 2;
 		shape = STRUCTURING_ELEMENT_SHAPE.SQUARE;
@@ -35,16 +33,15 @@ public class Opening extends AbstractOperation {
 	 * @see AbstractOperation
 	 */
 	@Override
-	public BufferedImage execute(BufferedImage img) {
+	public BufferedImage execute(BufferedImage img, MorphologyBuffers buffers) {
 		if(img.getType()!=BufferedImage.TYPE_BYTE_GRAY)
 			throw new IllegalArgumentException("The image must be of type TYPE_BYTE_GRAY");
 		
-		BufferedImage erodedImg, openedImg;
-		Dilation dilation = new Dilation(shape,shapeSize);
-		Erosion erosion = new Erosion(shape,shapeSize);
-				
-		erodedImg = erosion.execute(img);
-		openedImg = dilation.execute(erodedImg);
+		// Erode into the result image, then dilate it in place
+		BufferedImage openedImg = buffers.getImage(img.getWidth(),
+				img.getHeight());
+		rankFilter(img, openedImg, shape, shapeSize, false, buffers);
+		rankFilter(openedImg, openedImg, shape, shapeSize, true, buffers);
 		
 		return openedImg;
 	}
@@ -0,0 +1,237 @@
+package mvc.model;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import common.Document;
+
+/**
+ * Journal of the files of a batch that have been identified, written next to
+ * the batch while it is analyzed. Every result is appended, and flushed, as
+ * soon as it is collected, so if the analysis is aborted, or the program dies,
+ * the next analysis of the batch only has to identify the remaining files.
+ * The journal is deleted when the whole batch has been analyzed.
+ *
+ * The journal starts with a header holding the parameters of the
+ * identification. A journal written with other parameters is ignored, and
+ * overwritten. Every record holds the name, size and modification time of an
+ * image file, followed by the identified document, if any. A record cut off
+ * by a crash is dropped.
+ *
+ * The results read when the journal is opened are never changed, so
+ * {@link #contains(File)} and {@link #get(File)} may be called by any thread.
+ * {@link #append(File, Document)} must only be called by one thread at a time.
+ */
+public class BatchJournal {
+	public static final String FILE_NAME = "DocCrop_journal.dat";
+
+	// "DCJ" followed by the version of the file format
+	private static final int MAGIC = 0x44434a01;
+
+	private final File file;
+	private final String parameters;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private DataOutputStream output;
+
+	/**
+	 * Open the journal, reading the results of an earlier analysis with the
+	 * same parameters. The file is not written until a result is appended.
+	 *
+	 * @param file
+	 *            The journal file
+	 * @param parameters
+	 *            The parameters of the identification, see
+	 *            {@link imageanalysis.DocumentIdentifier#getParameters()}
+	 * @throws IOException
+	 *             If the journal exists but could not be read
+	 */
+	public BatchJournal(File file, String parameters) throws IOException {
+		this.file = file;
+		this.parameters = parameters;
+		if (file.exists())
+			read();
+	}
+
+	private void read() throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (input.readInt() != MAGIC
+					|| !input.readUTF().equals(parameters))
+				return;
+			while (true) {
+				String name = input.readUTF();
+				Entry entry = new Entry();
+				entry.length = input.readLong();
+				entry.lastModified = input.readLong();
+				if (input.readBoolean()) {
+					entry.doc = new int[5];
+					for (int i = 0; i < entry.doc.length; i++) {
+						entry.doc[i] = input.readInt();
+					}
+				}
+				entries.put(name, entry);
+			}
+		} catch (EOFException e) {
+			// The end of the journal, which may have been cut off
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Check if an image file has been identified by an earlier analysis. The
+	 * file must not have changed since.
+	 *
+	 * @param imageFile
+	 *            The image file
+	 * @return True if the result of the file is journaled
+	 */
+	public boolean contains(File imageFile) {
+		Entry entry = entries.get(imageFile.getName());
+		return entry != null && entry.length == imageFile.length()
+				&& entry.lastModified == imageFile.lastModified();
+	}
+
+	/**
+	 * Get the journaled document of an image file
+	 *
+	 * @param imageFile
+	 *            The image file
+	 * @return The document, or null if no document was found in the file or
+	 *         if the file is not journaled, see {@link #contains(File)}
+	 */
+	public Document get(File imageFile) {
+		if (!contains(imageFile))
+			return null;
+		int[] doc = entries.get(imageFile.getName()).doc;
+		if (doc == null)
+			return null;
+		Document document = new Document();
+		document.setLocation(new Point(doc[0], doc[1]));
+		document.setWidth(doc[2]);
+		document.setHeight(doc[3]);
+		document.setRotation(doc[4]);
+		document.setId(imageFile.getPath());
+		return document;
+	}
+
+	/**
+	 * Number of files journaled by earlier analyses
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Append the result of an image file to the journal
+	 *
+	 * @param imageFile
+	 *            The image file
+	 * @param document
+	 *            The document found in the file, or null if none was found
+	 * @throws IOException
+	 *             If the journal could not be written
+	 */
+	public void append(File imageFile, Document document) throws IOException {
+		if (output == null)
+			open();
+		int[] doc = null;
+		if (document != null)
+			doc = new int[] { document.getX(), document.getY(),
+					document.getWidth(), document.getHeight(),
+					document.getRotation() };
+		write(output, imageFile.getName(), imageFile.length(),
+				imageFile.lastModified(), doc);
+		output.flush();
+	}
+
+	/**
+	 * Open the file for appending. The entries read are first written to a new
+	 * file, which replaces the journal. That drops a partial record at the
+	 * end, and a journal written with other parameters, without the journal
+	 * ever being left half written.
+	 */
+	private void open() throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeUTF(parameters);
+			Iterator<Map.Entry<String, Entry>> it = entries.entrySet()
+					.iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, Entry> e = it.next();
+				write(out, e.getKey(), e.getValue().length,
+						e.getValue().lastModified, e.getValue().doc);
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			// Renaming onto an existing file fails on some platforms
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Could not replace " + file);
+		}
+		output = new DataOutputStream(new FileOutputStream(file, true));
+	}
+
+	private static void write(DataOutputStream out, String name,
+			long length, long lastModified, int[] doc) throws IOException {
+		// Written as one block, so a crash cuts off at most this record
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeUTF(name);
+		record.writeLong(length);
+		record.writeLong(lastModified);
+		record.writeBoolean(doc != null);
+		if (doc != null) {
+			for (int i = 0; i < doc.length; i++) {
+				record.writeInt(doc[i]);
+			}
+		}
+		bytes.writeTo(out);
+	}
+
+	public void close() throws IOException {
+		if (output != null) {
+			output.close();
+			output = null;
+		}
+	}
+
+	/**
+	 * Close and delete the journal, once the batch has been analyzed
+	 *
+	 * @throws IOException
+	 *             If the journal could not be deleted
+	 */
+	public void delete() throws IOException {
+		close();
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not delete " + file);
+	}
+
+	/**
+	 * The journaled result of an image file
+	 */
+	private static class Entry {
+		private long length;
+		private long lastModified;
+		private int[] doc;
+	}
+}
@@ -0,0 +1,264 @@
+package mvc.model;
+
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.Document;
+import common.DocumentCache;
+import common.ImageBatchSettings;
+
+/**
+ * The stages used when analyzing batches. Every file passes three stages, each
+ * run by its own executor:
+ * <ul>
+ * <li>decoding, where the image file is read, ahead of the analysis</li>
+ * <li>analysis, where the document in the decoded image is identified</li>
+ * <li>writing, where the corrected documents are handed to the
+ * {@link IDocumentSink}, if any</li>
+ * </ul>
+ * The stages are bounded by the capacity of the pipeline. At most that many
+ * files are decoded or analyzed ahead of the file being collected, and at most
+ * that many documents wait to be written, so a fast stage blocks instead of
+ * filling the memory with images a slower stage has not got to yet.
+ * 
+ * The same executor may be used for several stages.
+ * 
+ * Optionally, a fourth executor runs the retries of hard images in parallel,
+ * see {@link #setSpeculator(ExecutorService)}.
+ */
+public class BatchPipeline {
+	private final ExecutorService decoder;
+	private final ExecutorService analyzer;
+	private final ExecutorService writer;
+	private final int capacity;
+	private final boolean ownsExecutors;
+	private final Vector<Future<?>> writes = new Vector<Future<?>>();
+	private IDocumentSink sink;
+	private DocumentCache cache;
+	private ExecutorService speculator;
+
+	/**
+	 * Create a pipeline running the stages on the given executors. The
+	 * executors are not shut down by the pipeline.
+	 * 
+	 * @param decoder
+	 *            The executor reading the image files
+	 * @param analyzer
+	 *            The executor identifying the documents
+	 * @param writer
+	 *            The executor writing the documents to the sink
+	 * @param capacity
+	 *            Maximum number of files in flight in the decode and analysis
+	 *            stages, and of documents waiting to be written (>= 1)
+	 */
+	public BatchPipeline(ExecutorService decoder, ExecutorService analyzer,
+			ExecutorService writer, int capacity) {
+		this(decoder, analyzer, writer, capacity, false);
+	}
+
+	private BatchPipeline(ExecutorService decoder, ExecutorService analyzer,
+			ExecutorService writer, int capacity, boolean ownsExecutors) {
+		if (capacity < 1)
+			throw new IllegalArgumentException(
+					"The capacity of the pipeline must be >= 1");
+		this.decoder = decoder;
+		this.analyzer = analyzer;
+		this.writer = writer;
+		this.capacity = capacity;
+		this.ownsExecutors = ownsExecutors;
+	}
+
+	/**
+	 * Create a pipeline with one pool of daemon threads per stage, sized by
+	 * the settings, and a pool of speculative retries if turned on by the
+	 * settings. The speculative retries take half of the worker threads, so
+	 * that together with the analysis they do not use more threads than the
+	 * settings give. With a single worker thread the retries stay serial. The
+	 * pools are shut down by {@link #shutdown()}.
+	 * 
+	 * @param settings
+	 *            The settings giving the number of threads of every stage and
+	 *            the capacity of the pipeline
+	 * @return The pipeline
+	 */
+	public static BatchPipeline create(ImageBatchSettings settings) {
+		int speculators = 0;
+		if (settings.isSpeculativeRetries())
+			speculators = settings.getThreads() / 2;
+		BatchPipeline pipeline = new BatchPipeline(createExecutor("decoder",
+				settings.getDecodeThreads()), createExecutor("worker",
+				settings.getThreads() - speculators), createExecutor("writer",
+				settings.getWriteThreads()), settings.getQueueCapacity(), true);
+		if (speculators > 0)
+			pipeline.setSpeculator(createExecutor("speculator", speculators));
+		return pipeline;
+	}
+
+	/**
+	 * Create a pool of daemon threads
+	 * 
+	 * @param stage
+	 *            The name of the stage, used in the names of the threads
+	 * @param threads
+	 *            The number of threads in the pool
+	 * @return The thread pool
+	 */
+	private static ExecutorService createExecutor(final String stage,
+			int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "DocCrop-" + stage + "-"
+						+ count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public ExecutorService getDecoder() {
+		return decoder;
+	}
+
+	public ExecutorService getAnalyzer() {
+		return analyzer;
+	}
+
+	public ExecutorService getWriter() {
+		return writer;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Set the sink receiving the corrected documents of every batch. If null,
+	 * which is the default, nothing is written.
+	 * 
+	 * @param sink
+	 *            The sink, or null
+	 */
+	public void setSink(IDocumentSink sink) {
+		this.sink = sink;
+	}
+
+	public IDocumentSink getSink() {
+		return sink;
+	}
+
+	/**
+	 * Set the cache of identified documents. Files found in the cache are
+	 * neither decoded nor analyzed, and newly identified documents are added
+	 * to it. If null, which is the default, every file is identified.
+	 * 
+	 * @param cache
+	 *            The cache, or null
+	 */
+	public void setCache(DocumentCache cache) {
+		this.cache = cache;
+	}
+
+	public DocumentCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Set the executor running the retries of hard images in parallel, see
+	 * <code>DocumentIdentifier.setSpeculativeExecutor</code>. It must not be
+	 * the analyzer. If null, which is the default, retries are serial.
+	 * 
+	 * @param speculator
+	 *            The executor, or null
+	 */
+	public void setSpeculator(ExecutorService speculator) {
+		this.speculator = speculator;
+	}
+
+	public ExecutorService getSpeculator() {
+		return speculator;
+	}
+
+	/**
+	 * Hand a document to the sink on the writer executor. Blocks while the
+	 * number of documents waiting to be written is at the capacity of the
+	 * pipeline. Documents that cannot be written are reported by the batch.
+	 * 
+	 * @param batch
+	 *            The batch the document belongs to
+	 * @param doc
+	 *            The document
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for an earlier document
+	 */
+	public void write(final ImageBatch batch, final Document doc)
+			throws InterruptedException {
+		final IDocumentSink target = sink;
+		if (target == null)
+			return;
+		while (writes.size() >= capacity)
+			awaitWrite(writes.remove(0));
+		writes.add(writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					target.write(batch, doc);
+				} catch (IOException e) {
+					ImageBatch.reportError(e);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Wait until all documents handed to {@link #write(ImageBatch, Document)}
+	 * have been written
+	 * 
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	public void awaitWrites() throws InterruptedException {
+		while (!writes.isEmpty())
+			awaitWrite(writes.remove(0));
+	}
+
+	private static void awaitWrite(Future<?> write)
+			throws InterruptedException {
+		try {
+			write.get();
+		} catch (CancellationException e) {
+			// Cancelled by shutdown, nothing to wait for
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Cancel the documents not yet written and, if the executors were created
+	 * by {@link #create(ImageBatchSettings)}, shut them down
+	 */
+	public void shutdown() {
+		for (Object write : writes.toArray()) {
+			((Future<?>) write).cancel(true);
+		}
+		writes.clear();
+		if (ownsExecutors) {
+			decoder.shutdownNow();
+			analyzer.shutdownNow();
+			writer.shutdownNow();
+			if (speculator != null)
+				speculator.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package mvc.model;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import common.Document;
+import common.DocumentCropper;
+import common.ImageUtilities;
+
+/**
+ * Sink writing every document as an image of its own, cropped out of the image
+ * file it was identified in. The cropped image is named after the image file,
+ * extension included, followed by the extension of the output format, so
+ * scan1.tif and scan1.jpg give scan1.tif.png and scan1.jpg.png. Two image
+ * files cropped to the same file, e.g. from batches sharing an absolute
+ * output directory, are reported instead of overwriting each other. The sink
+ * is thread safe, so the documents of a batch can be cropped by several
+ * writer threads in parallel.
+ */
+public class CroppedImageSink implements IDocumentSink {
+	public static final String DEFAULT_DIRECTORY = "cropped";
+	public static final String DEFAULT_FORMAT = "png";
+
+	private final String directory;
+	private final String format;
+	// The image file every written file was cropped from
+	private final Map<File, File> sources = new HashMap<File, File>();
+
+	/**
+	 * Create a sink writing PNG images to the directory "cropped" in every
+	 * batch directory
+	 */
+	public CroppedImageSink() {
+		this(null, DEFAULT_FORMAT);
+	}
+
+	/**
+	 * Create a sink writing the cropped images in the given format
+	 * 
+	 * @param directory
+	 *            The output directory. A relative path is resolved against
+	 *            the directory of every batch. If null, "cropped" is used.
+	 * @param format
+	 *            The informal name of the output format, e.g. "png" or "jpg"
+	 */
+	public CroppedImageSink(String directory, String format) {
+		if (!ImageUtilities.isWritableFormat(format))
+			throw new IllegalArgumentException("Unsupported image format: "
+					+ format);
+		this.directory = directory == null ? DEFAULT_DIRECTORY : directory;
+		this.format = format;
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	@Override
+	public void write(ImageBatch batch, Document doc) throws IOException {
+		File imageFile = new File(doc.getId());
+		File outputFile = getOutputFile(batch, imageFile);
+		if (outputFile.getCanonicalFile().equals(imageFile.getCanonicalFile()))
+			throw new IOException("Refusing to overwrite the image file "
+					+ imageFile);
+		claim(outputFile, imageFile);
+		File outputDirectory = outputFile.getParentFile();
+		if (!outputDirectory.mkdirs() && !outputDirectory.isDirectory())
+			throw new IOException("Could not create the directory "
+					+ outputDirectory);
+
+		BufferedImage cropped = DocumentCropper.crop(doc);
+		ImageUtilities.writeImage(cropped, format, outputFile);
+	}
+
+	/**
+	 * Get the file the document of an image file is written to
+	 * 
+	 * @param batch
+	 *            The batch of the image file
+	 * @param imageFile
+	 *            The image file
+	 * @return The file of the cropped image
+	 */
+	public File getOutputFile(ImageBatch batch, File imageFile) {
+		File outputDirectory = new File(directory);
+		if (!outputDirectory.isAbsolute())
+			outputDirectory = new File(batch.getBatchPath(), directory);
+
+		return new File(outputDirectory, imageFile.getName() + "." + format);
+	}
+
+	/**
+	 * Claim an output file for the document of an image file. Writing the
+	 * same image file again, e.g. when a batch is analyzed anew, is allowed.
+	 * 
+	 * @throws IOException
+	 *             If the output file was claimed by another image file
+	 */
+	private void claim(File outputFile, File imageFile) throws IOException {
+		File output = outputFile.getCanonicalFile();
+		File source = imageFile.getCanonicalFile();
+		synchronized (sources) {
+			File claimed = sources.get(output);
+			if (claimed != null && !claimed.equals(source))
+				throw new IOException("Refusing to overwrite the crop of "
+						+ claimed + " with the crop of " + source + " in "
+						+ output);
+			sources.put(output, source);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package mvc.model;
+
+import java.io.IOException;
+
+import common.Document;
+
+/**
+ * Receives the documents of a batch once they have been identified and
+ * corrected, e.g. to write the cropped documents to disk. The documents are
+ * handed to the sink by the writer threads of a {@link BatchPipeline}, so a
+ * sink used with more than one writer thread must be thread safe.
+ */
+public interface IDocumentSink {
+
+	/**
+	 * Write a single document
+	 * 
+	 * @param batch
+	 *            The batch the document belongs to
+	 * @param doc
+	 *            The document
+	 * @throws IOException
+	 *             If the document could not be written
+	 */
+	public void write(ImageBatch batch, Document doc) throws IOException;
+}
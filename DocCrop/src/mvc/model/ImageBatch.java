@@ -2,15 +2,23 @@ package mvc.model;
 
 import imageanalysis.DocumentIdentifier;
 import imageanalysis.DocumentUtilities;
+import imageanalysis.StreamingDocumentCorrector;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -20,6 +28,7 @@ import javax.swing.SwingUtilities;
 
 import common.Document;
 import common.Document.DocumentType;
+import common.DocumentCache;
 import common.ImageBatchSettings;
 import common.ImageUtilities;
 
@@ -41,12 +50,17 @@ public class ImageBatch {
 	 * there is large variation in position of the documents in the batch. Or
 	 * possibly if the position of the spine of the documents in the batch do
 	 * not behave linearly with respect to position in the batch
+	 * 
+	 * The positions of SIMPLE batches are corrected with
+	 * DocumentUtilities.LINEAR_POSITION, the ones of COMPLEX batches with
+	 * DocumentUtilities.MEDIAN_POSITION.
 	 */
 	public enum DocumentBehavior {
 		SIMPLE, COMPLEX
 	}
 
 	private volatile boolean stopRequest = false;
+	private volatile Vector<Future<DecodedFile>> pending;
 	ImageBatches parent;
 	private DocumentType docType;
 	private DocumentBehavior docBehavior;
@@ -56,6 +70,10 @@ public class ImageBatch {
 	private BatchProgressBar progressBar;
 	private int length;
 	private int[] padding = { 0, 0 };
+	private boolean journaling;
+	private boolean streamingCorrection;
+	private boolean coarseToFine;
+	private ExecutorService speculator;
 	private ArrayList<String> fileSuffixes = new ArrayList<String>();
 
 	public ImageBatch(File batch, ImageBatchSettings settings) {
@@ -70,6 +88,9 @@ public class ImageBatch {
 		docType = settings.getType();
 		padding[0] = settings.getPaddingWidth();
 		padding[1] = settings.getPaddingHeight();
+		journaling = settings.isJournaling();
+		streamingCorrection = settings.isStreamingCorrection();
+		coarseToFine = settings.isCoarseToFine();
 		final String[] fileFilter = settings.getFileFilter();
 		// If the batch is a directory, add all the files in that directory
 		// to the File[], else set the File[] only to contain batch
@@ -88,6 +109,10 @@ public class ImageBatch {
 					return false;
 				}
 			});
+			// listFiles gives no particular order, and the correction of
+			// the documents relies on the files being in page order
+			if (files != null)
+				Arrays.sort(files);
 		} else {
 			this.batchPath = batch.getParent();
 			for (int i = 0; i < fileFilter.length; i++) {
@@ -206,43 +231,419 @@ public class ImageBatch {
 	public String[] getFileSuffixes() {
 		return fileSuffixes.toArray(new String[fileSuffixes.size()]);
 	}
+	/**
+	 * Stop the analysis of the batch. May be called from any thread. The
+	 * pending tasks are cancelled right away, while the analyzing thread
+	 * notices the request and returns.
+	 */
 	public void stopRequest() {
 		stopRequest = true;
+		cancelPending();
 	}
 
-	public boolean analyzeBatches() {
+	/**
+	 * Identify the documents of all files in the batch, using the same
+	 * executor for decoding and analyzing the files. See
+	 * {@link #analyzeBatches(BatchPipeline)}.
+	 * 
+	 * @param executor
+	 *            The executor running the identification tasks
+	 * @param maxPending
+	 *            Maximum number of submitted but not yet collected files (>=
+	 *            1)
+	 * @return True if the whole batch was analyzed, false if the analysis was
+	 *         aborted
+	 */
+	public boolean analyzeBatches(ExecutorService executor, int maxPending) {
+		return analyzeBatches(new BatchPipeline(executor, executor, executor,
+				maxPending));
+	}
+
+	/**
+	 * Identify the documents of all files in the batch. Every file is read by
+	 * the decoder of the pipeline, which then hands the loaded
+	 * <code>DocumentIdentifier</code> to the analyzer, so that files are read
+	 * while earlier files are being identified. The results are collected,
+	 * and the progress reported, in file order by the calling thread. At most
+	 * as many files as the capacity of the pipeline are submitted ahead of the
+	 * file currently being collected.
+	 * 
+	 * Unless turned off by the settings, every result is added to the
+	 * {@link BatchJournal} of the batch as soon as it is collected, and files
+	 * found in the journal of an aborted analysis are not identified again.
+	 * 
+	 * When the whole batch has been identified, the journal is deleted, and
+	 * the documents are corrected and handed to the sink of the pipeline, if
+	 * any. With streaming correction turned on by the settings, the documents
+	 * of COMPLEX batches are instead corrected by a
+	 * {@link StreamingDocumentCorrector} as they are collected, and handed to
+	 * the sink right away. The linear fit of SIMPLE batches needs the whole
+	 * batch. The writes are not waited for, see
+	 * {@link BatchPipeline#awaitWrites()}.
+	 * 
+	 * @param pipeline
+	 *            The pipeline running the decode, analysis and write stages
+	 * @return True if the whole batch was analyzed, false if the analysis was
+	 *         aborted
+	 */
+	public boolean analyzeBatches(BatchPipeline pipeline) {
 		stopRequest = false;
 		Vector<Document> documentBatch = new Vector<Document>();
-		for (int j = 0; j < files.length; j++) {
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException ie) {
-				if (stopRequest == true)
+		boolean preview = parent.isPreviewRequested();
+		int maxPending = pipeline.getCapacity();
+		pending = new Vector<Future<DecodedFile>>();
+		int submitted = 0;
+		speculator = pipeline.getSpeculator();
+		BatchJournal journal = openJournal();
+		StreamingDocumentCorrector corrector = null;
+		if (streamingCorrection && docBehavior == DocumentBehavior.COMPLEX)
+			corrector = new StreamingDocumentCorrector();
+		try {
+			for (int j = 0; j < length; j++) {
+				// Keep the stages busy, without letting finished results
+				// pile up while waiting for a slow file
+				while (submitted < length
+						&& pending.size() < maxPending && !stopRequest) {
+					pending.add(pipeline.getDecoder().submit(
+							new DecodeTask(files[submitted].getPath(),
+									preview, pipeline.getAnalyzer(), pipeline
+											.getCache(), journal)));
+					submitted++;
+				}
+				if (stopRequest)
+					return false;
+
+				// Leave the file pending until analyzed, so that the analysis
+				// is cancelled on a stop request
+				DecodedFile decoded = pending.get(0).get();
+				if (stopRequest)
 					return false;
+				if (decoded.error != null) {
+					reportError(decoded.error);
+				} else {
+					IdentificationResult result = decoded.cached;
+					if (result == null)
+						result = decoded.analysis.get();
+					if (stopRequest)
+						return false;
+					if (journal != null && !decoded.journaled)
+						journal = appendToJournal(journal, files[j],
+								result.document);
+					if (decoded.key != null)
+						cache(pipeline.getCache(), decoded.key,
+								result.document);
+					if (result.document != null) {
+						if (corrector == null)
+							documentBatch.add(result.document);
+						else
+							write(pipeline, corrector.add(result.document),
+									documentBatch);
+						if (result.preview != null)
+							parent.updatePreview(result.preview);
+					}
+				}
+				pending.remove(0);
+				setProgress(j + 1);
+			}
+			if (journal != null) {
+				try {
+					journal.delete();
+				} catch (IOException e) {
+					reportError(e);
+				}
+				journal = null;
+			}
+			if (corrector == null) {
+				documentBatch = DocumentUtilities.correctDocuments(
+						documentBatch, getPositionMode());
+				write(pipeline, documentBatch, null);
+			} else {
+				write(pipeline, corrector.flush(), documentBatch);
+			}
+			docs = new Document[documentBatch.size()];
+			docs = documentBatch.toArray(docs);
+		} catch (InterruptedException e) {
+			return false;
+		} catch (CancellationException e) {
+			return false;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			cancelPending();
+			pending.clear();
+			if (journal != null) {
+				try {
+					journal.close();
+				} catch (IOException e) {
+					reportError(e);
+				}
+			}
+		}
+		return !stopRequest;
+	}
+
+	/**
+	 * The position mode of DocumentUtilities matching the behavior of the
+	 * batch
+	 */
+	private int getPositionMode() {
+		if (docBehavior == DocumentBehavior.COMPLEX)
+			return DocumentUtilities.MEDIAN_POSITION;
+		return DocumentUtilities.LINEAR_POSITION;
+	}
+
+	/**
+	 * Hand corrected documents to the sink of the pipeline
+	 * 
+	 * @param corrected
+	 *            The corrected documents
+	 * @param documentBatch
+	 *            The documents of the batch to add the corrected documents
+	 *            to, or null
+	 */
+	private void write(BatchPipeline pipeline, Vector<Document> corrected,
+			Vector<Document> documentBatch) throws InterruptedException {
+		for (int i = 0; i < corrected.size() && !stopRequest; i++) {
+			pipeline.write(this, corrected.get(i));
+		}
+		if (documentBatch != null)
+			documentBatch.addAll(corrected);
+	}
+
+	/**
+	 * Open the journal of the batch. A batch in a directory that cannot be
+	 * written, e.g. on a read-only share, is quietly analyzed without journal.
+	 * 
+	 * @return The journal, or null if journaling is turned off, the directory
+	 *         cannot be written, or the journal could not be read
+	 */
+	private BatchJournal openJournal() {
+		if (!journaling || length == 0)
+			return null;
+		File file = new File(batchPath, BatchJournal.FILE_NAME)
+				.getAbsoluteFile();
+		if (!file.getParentFile().canWrite())
+			return null;
+		try {
+			return new BatchJournal(file, createIdentifier("").getParameters());
+		} catch (IOException e) {
+			reportError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Add a result to the journal. If the journal cannot be written, the error
+	 * is reported and the analysis continues without journal.
+	 * 
+	 * @return The journal, or null if it could not be written
+	 */
+	private BatchJournal appendToJournal(BatchJournal journal, File file,
+			Document document) {
+		try {
+			journal.append(file, document);
+			return journal;
+		} catch (IOException e) {
+			reportError(e);
+			try {
+				journal.close();
+			} catch (IOException ignored) {
+				// Already reported
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Add a result to the cache, including that no document was found. The
+	 * result is only cached once collected, so an identification cut short
+	 * by a stop request is never taken for a file without a document.
+	 */
+	private void cache(DocumentCache cache, long key, Document document) {
+		try {
+			cache.put(key, document);
+		} catch (IOException e) {
+			// The document is still valid, only not cached
+			reportError(e);
+		}
+	}
+
+	/**
+	 * Create an identifier for a file, with the settings of the batch
+	 */
+	private DocumentIdentifier createIdentifier(String filePath) {
+		DocumentIdentifier docIdent = new DocumentIdentifier(filePath);
+		docIdent.setPadding(padding);
+		docIdent.setDocumentType(docType);
+		docIdent.setCoarseToFine(coarseToFine);
+		docIdent.setSpeculativeExecutor(speculator);
+		return docIdent;
+	}
+
+	/**
+	 * Report a file that could not be read or written. A dialog with the
+	 * message and the stack trace is shown, unless running without a display,
+	 * in which case the error is printed to standard error.
+	 * 
+	 * @param error
+	 *            The error to report
+	 */
+	static void reportError(IOException error) {
+		if (GraphicsEnvironment.isHeadless()) {
+			System.err.println(error.getMessage());
+			error.printStackTrace();
+			return;
+		}
+		String stackTrace = error.getMessage() + "\n";
+		for (int i = 0; i < error.getStackTrace().length; i++) {
+			stackTrace += error.getStackTrace()[i].toString() + "\n";
+		}
+		JOptionPane.showMessageDialog(new JFrame(), stackTrace);
+	}
+
+	/**
+	 * Cancel, and interrupt, all submitted decode and identification tasks
+	 * that have not yet been collected. The pending tasks are only read, from
+	 * a snapshot, so that this may run while the analyzing thread, the only
+	 * one changing them, is collecting a result.
+	 */
+	private void cancelPending() {
+		Vector<Future<DecodedFile>> toCancel = pending;
+		if (toCancel == null)
+			return;
+		for (Object element : toCancel.toArray()) {
+			@SuppressWarnings("unchecked")
+			Future<DecodedFile> future = (Future<DecodedFile>) element;
+			if (!future.cancel(true) && !future.isCancelled()) {
+				// Already decoded, cancel the analysis instead
+				try {
+					DecodedFile decoded = future.get();
+					if (decoded.analysis != null)
+						decoded.analysis.cancel(true);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					// Failed, nothing left to cancel
+				}
+			}
+		}
+	}
+
+	/**
+	 * A file that has passed the decode stage, either with the identification
+	 * of the file submitted to the analyzer, with the document found in the
+	 * cache or the journal, or with the error from reading the file
+	 */
+	private static class DecodedFile {
+		private Future<IdentificationResult> analysis;
+		// Cache key to store the result of the analysis under, if any
+		private Long key;
+		private IdentificationResult cached;
+		private boolean journaled;
+		private IOException error;
+	}
+
+	/**
+	 * Result of the identification of a single file
+	 */
+	private static class IdentificationResult {
+		private Document document;
+		private BufferedImage preview;
+	}
+
+	/**
+	 * Task reading a single file. Once the file is read, the identification
+	 * of the document is submitted to the analyzer, so the decoder is free to
+	 * read the next file. Files found in the journal or the cache are not
+	 * read at all.
+	 */
+	private class DecodeTask implements Callable<DecodedFile> {
+		private final String filePath;
+		private final boolean preview;
+		private final ExecutorService analyzer;
+		private final DocumentCache cache;
+		private final BatchJournal journal;
+
+		public DecodeTask(String filePath, boolean preview,
+				ExecutorService analyzer, DocumentCache cache,
+				BatchJournal journal) {
+			this.filePath = filePath;
+			this.preview = preview;
+			this.analyzer = analyzer;
+			this.cache = cache;
+			this.journal = journal;
+		}
+
+		@Override
+		public DecodedFile call() {
+			DecodedFile decoded = new DecodedFile();
+			File file = new File(filePath);
+			if (journal != null && journal.contains(file)) {
+				decoded.cached = new IdentificationResult();
+				decoded.cached.document = journal.get(file);
+				decoded.journaled = true;
+				return decoded;
+			}
+			DocumentIdentifier docIdent = createIdentifier(filePath);
+
+			Long key = null;
+			if (cache != null) {
+				try {
+					key = cache.getKey(file, docIdent.getParameters());
+				} catch (IOException e) {
+					decoded.error = e;
+					return decoded;
+				}
+				if (cache.contains(key)) {
+					decoded.cached = new IdentificationResult();
+					decoded.cached.document = cache.get(key, filePath);
+					return decoded;
+				}
 			}
-			DocumentIdentifier docIdent = new DocumentIdentifier(
-					files[j].getPath());
-			docIdent.setPadding(padding);
-			docIdent.setDocumentType(docType);
 
 			try {
 				docIdent.load();
 			} catch (IOException e) {
-				String stackTrace = "";
-				for (int i = 0; i < e.getStackTrace().length; i++) {
-					stackTrace += e.getStackTrace()[i].toString() + "\n";
-				}
-				JOptionPane.showMessageDialog(new JFrame(), stackTrace);
+				decoded.error = e;
+				return decoded;
 			}
-			documentBatch.add(docIdent.identify());
-			parent.updatePreview(docIdent.markDocument(new Color(0.5f, 1.0f,
-					0.0f, 0.4f)));
-			setProgress(j + 1);
+			// Cancelled while reading
+			if (Thread.currentThread().isInterrupted())
+				return decoded;
+			decoded.analysis = analyzer.submit(new IdentificationTask(
+					docIdent, preview));
+			decoded.key = key;
+			return decoded;
+		}
+	}
+
+	/**
+	 * Task identifying the document in a single, already loaded, file. Every
+	 * task uses its own <code>DocumentIdentifier</code>, since the identifier
+	 * is not thread safe.
+	 */
+	private class IdentificationTask implements
+			Callable<IdentificationResult> {
+		private final DocumentIdentifier docIdent;
+		private final boolean preview;
+
+		public IdentificationTask(DocumentIdentifier docIdent,
+				boolean preview) {
+			this.docIdent = docIdent;
+			this.preview = preview;
+		}
+
+		@Override
+		public IdentificationResult call() {
+			IdentificationResult result = new IdentificationResult();
+			result.document = docIdent.identify();
+			if (result.document != null && preview)
+				result.preview = docIdent.markDocument(new Color(0.5f, 1.0f,
+						0.0f, 0.4f));
+			return result;
 		}
-		documentBatch = DocumentUtilities.correctDocuments(documentBatch);
-		docs = new Document[documentBatch.size()];
-		docs = documentBatch.toArray(docs);
-		return true;
 	}
 
 	@SuppressWarnings("serial")
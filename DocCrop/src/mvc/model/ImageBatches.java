@@ -2,13 +2,16 @@ package mvc.model;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
 import mvc.AbstractModel;
 import mvc.control.ImageBatchController;
 
 import common.Document;
+import common.DocumentCache;
 import common.ImageBatchSettings;
 
 /**
@@ -25,6 +28,8 @@ public class ImageBatches extends AbstractModel {
 	private Collection<Document> documents;
 	private ImageBatchSettings settings;
 	private int currentAnalyzedBatch;
+	private ExecutorService executor;
+	private IDocumentSink sink;
 
 	public ImageBatches(File[] batches, ImageBatchSettings settings) {
 		this.settings = settings;
@@ -66,6 +71,17 @@ public class ImageBatches extends AbstractModel {
 		
 	}
 	
+	/**
+	 * Check if anyone is listening for preview updates. If not, there is no
+	 * need to render previews while analyzing the batches.
+	 * 
+	 * @return True if previews should be rendered
+	 */
+	public boolean isPreviewRequested() {
+		return propertyChangeSupport
+				.hasListeners(ImageBatchController.PREVIEW);
+	}
+
 	public ImageBatch[] getBatches() {
 		return batches.toArray(new ImageBatch[batches.size()]);
 	}
@@ -78,16 +94,104 @@ public class ImageBatches extends AbstractModel {
 		return documents;
 	}
 
+	/**
+	 * Analyze all batches, starting with the batch that was being analyzed
+	 * when the previous analysis was aborted. The files are decoded, analyzed
+	 * and written by the executor set by {@link #setExecutor(ExecutorService)},
+	 * or, if no executor has been set, by a {@link BatchPipeline} with as many
+	 * threads per stage as given by the settings. Returns when all documents
+	 * handed to the sink, if any, have been written.
+	 */
 	public void analyzeBatches() {
-		for (int i = currentAnalyzedBatch; i < batches.size(); i++) {
-			currentAnalyzedBatch = i;
-			if (!batches.get(i).analyzeBatches())
-				return;
+		BatchPipeline pipeline;
+		if (executor != null)
+			pipeline = new BatchPipeline(executor, executor, executor,
+					settings.getQueueCapacity());
+		else
+			pipeline = BatchPipeline.create(settings);
+		pipeline.setSink(sink);
+		DocumentCache cache = openCache();
+		pipeline.setCache(cache);
+		try {
+			for (int i = currentAnalyzedBatch; i < batches.size(); i++) {
+				currentAnalyzedBatch = i;
+				if (!batches.get(i).analyzeBatches(pipeline))
+					return;
+			}
+			pipeline.awaitWrites();
+		} catch (InterruptedException e) {
+			return;
+		} finally {
+			pipeline.shutdown();
+			closeCache(cache);
 		}
 		currentAnalyzedBatch++;
 		firePropertyChange(ImageBatchController.NEW_DOCUMENTS, null, this);
 	}
 
+	/**
+	 * Open the cache given by the settings. A cache that cannot be opened is
+	 * reported, and the batches are analyzed without it.
+	 * 
+	 * @return The cache, or null if no cache is used
+	 */
+	private DocumentCache openCache() {
+		if (settings.getCacheFile() == null)
+			return null;
+		try {
+			return new DocumentCache(new File(settings.getCacheFile()),
+					settings.getCacheSize(), settings.isContentHashing());
+		} catch (IOException e) {
+			ImageBatch.reportError(new IOException(
+					"Could not open the cache, analyzing without it: "
+							+ e.getMessage(), e));
+			return null;
+		}
+	}
+
+	private void closeCache(DocumentCache cache) {
+		if (cache == null)
+			return;
+		try {
+			cache.close();
+		} catch (IOException e) {
+			ImageBatch.reportError(new IOException(
+					"Could not write the cache: " + e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Set the sink receiving the documents of every batch once the batch has
+	 * been analyzed
+	 * 
+	 * @param sink
+	 *            The sink, or null if the documents should not be written
+	 */
+	public void setDocumentSink(IDocumentSink sink) {
+		this.sink = sink;
+	}
+
+	public IDocumentSink getDocumentSink() {
+		return sink;
+	}
+
+	/**
+	 * Set the executor used for analyzing the files in the batches. The
+	 * executor is used for all stages of the analysis, and is not shut down
+	 * by the model. If set to null, a pipeline of thread pools is created for
+	 * every analysis.
+	 * 
+	 * @param executor
+	 *            The executor, or null
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
 	public void setStopRequest(Boolean stopRequest) {
 		batches.get(currentAnalyzedBatch).stopRequest();
 	}
@@ -0,0 +1,241 @@
+package start;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import mvc.model.CroppedImageSink;
+import mvc.model.IDocumentSink;
+import mvc.model.ImageBatch;
+import mvc.model.ImageBatch.DocumentBehavior;
+import mvc.model.ImageBatches;
+
+import common.Document.DocumentType;
+import common.FileUtilities;
+import common.ImageBatchSettings;
+import common.SimplePrinter;
+import common.SimpleTimer;
+
+/**
+ * Command line entry point for the DocCrop project. The batches given on the
+ * command line are analyzed without any graphical user interface, which makes
+ * it possible to run DocCrop on machines without a display, e.g. servers and
+ * containers.
+ * 
+ * Usage: DocCropConsole [options] batch...
+ * 
+ * where every batch is a directory of images, or a single image, and the
+ * options are
+ * 
+ * <pre>
+ * -o, --output FILE        Write the documents of all batches to FILE
+ *                          (default: DocCrop_out.txt in every batch directory)
+ * -t, --threads N          Number of worker threads (default: all processors)
+ * --decode-threads N       Number of threads reading images ahead of the
+ *                          analysis (default: 2)
+ * --write-threads N        Number of threads writing the output (default: 1)
+ * --queue N                Maximum number of images read ahead of the
+ *                          analysis (default: 2 * threads + decode threads)
+ * --padding-width N        Padding added to the width of the documents
+ * --padding-height N       Padding added to the height of the documents
+ * --type SINGLE|DOUBLE     Type of the documents (default: SINGLE)
+ * --behaviour SIMPLE|COMPLEX
+ *                          Behaviour of the batches (default: SIMPLE)
+ * --filter SUFFIX,...      File suffixes to include
+ *                          (default: .png,.jpg,jpeg,.tif)
+ * --cache FILE             Keep the identified documents in FILE, and skip
+ *                          the files already found in it
+ * --cache-size N           Maximum number of documents in the cache
+ *                          (default: 100000)
+ * --content-hash           Recognize cached files by their contents instead
+ *                          of their path, size and modification time
+ * --no-journal             Do not journal the results in every batch
+ *                          directory, which lets an aborted run be resumed
+ * --stream-correction      Correct and write the documents while the batch
+ *                          is analyzed, instead of after the whole batch
+ *                          (COMPLEX batches only)
+ * --coarse                 Identify the documents in a coarse image first,
+ *                          faster but less accurate on clean scans
+ * --speculative            Run the retries of hard images in parallel
+ * --crop                   Also write every document as a cropped image
+ * --crop-dir DIR           Directory of the cropped images, relative to every
+ *                          batch directory unless absolute (default: cropped)
+ * --crop-format FORMAT     Format of the cropped images, e.g. png, jpg, tif
+ *                          or bmp (default: png)
+ * </pre>
+ */
+public class DocCropConsole {
+
+	private static final int EXIT_OK = 0;
+	private static final int EXIT_USAGE = 1;
+	private static final int EXIT_FAILURE = 2;
+
+	public static void main(String[] args) {
+		// Never try to connect to a display
+		System.setProperty("java.awt.headless", "true");
+		System.exit(run(args));
+	}
+
+	/**
+	 * Parse the arguments and analyze the batches
+	 * 
+	 * @param args
+	 *            The command line arguments
+	 * @return The exit status
+	 */
+	public static int run(String[] args) {
+		ImageBatchSettings settings = new ImageBatchSettings();
+		ArrayList<File> batchFiles = new ArrayList<File>();
+		String outputPath = null;
+		boolean crop = false;
+		String cropDirectory = null;
+		String cropFormat = CroppedImageSink.DEFAULT_FORMAT;
+		IDocumentSink sink = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-h") || arg.equals("--help")) {
+					printUsage();
+					return EXIT_OK;
+				} else if (arg.equals("-o") || arg.equals("--output")) {
+					outputPath = value(args, ++i, arg);
+				} else if (arg.equals("-t") || arg.equals("--threads")) {
+					settings.setThreads(Integer.parseInt(value(args, ++i, arg)));
+				} else if (arg.equals("--decode-threads")) {
+					settings.setDecodeThreads(Integer.parseInt(value(args, ++i,
+							arg)));
+				} else if (arg.equals("--write-threads")) {
+					settings.setWriteThreads(Integer.parseInt(value(args, ++i,
+							arg)));
+				} else if (arg.equals("--queue")) {
+					settings.setQueueCapacity(Integer.parseInt(value(args,
+							++i, arg)));
+				} else if (arg.equals("--padding-width")) {
+					settings.setPaddingWidth(Integer.parseInt(value(args, ++i,
+							arg)));
+				} else if (arg.equals("--padding-height")) {
+					settings.setPaddingHeight(Integer.parseInt(value(args, ++i,
+							arg)));
+				} else if (arg.equals("--type")) {
+					String type = value(args, ++i, arg);
+					if (type.equalsIgnoreCase("SINGLE"))
+						settings.setType(DocumentType.SINGLE_PAGE);
+					else if (type.equalsIgnoreCase("DOUBLE"))
+						settings.setType(DocumentType.DOUBLE_PAGE);
+					else
+						throw new IllegalArgumentException("Unknown type: "
+								+ type);
+				} else if (arg.equals("--behaviour")) {
+					settings.setBehaviour(DocumentBehavior.valueOf(value(args,
+							++i, arg).toUpperCase()));
+				} else if (arg.equals("--filter")) {
+					settings.setFileFilter(value(args, ++i, arg).split(","));
+				} else if (arg.equals("--cache")) {
+					settings.setCacheFile(value(args, ++i, arg));
+				} else if (arg.equals("--cache-size")) {
+					settings.setCacheSize(Integer.parseInt(value(args, ++i,
+							arg)));
+				} else if (arg.equals("--content-hash")) {
+					settings.setContentHashing(true);
+				} else if (arg.equals("--no-journal")) {
+					settings.setJournaling(false);
+				} else if (arg.equals("--stream-correction")) {
+					settings.setStreamingCorrection(true);
+				} else if (arg.equals("--coarse")) {
+					settings.setCoarseToFine(true);
+				} else if (arg.equals("--speculative")) {
+					settings.setSpeculativeRetries(true);
+				} else if (arg.equals("--crop")) {
+					crop = true;
+				} else if (arg.equals("--crop-dir")) {
+					crop = true;
+					cropDirectory = value(args, ++i, arg);
+				} else if (arg.equals("--crop-format")) {
+					crop = true;
+					cropFormat = value(args, ++i, arg);
+				} else if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option: "
+							+ arg);
+				} else {
+					batchFiles.add(new File(arg));
+				}
+			}
+			if (crop)
+				sink = new CroppedImageSink(cropDirectory, cropFormat);
+		} catch (IllegalArgumentException e) {
+			// Also catches NumberFormatException
+			System.err.println(e.getMessage());
+			printUsage();
+			return EXIT_USAGE;
+		}
+		if (batchFiles.isEmpty()) {
+			printUsage();
+			return EXIT_USAGE;
+		}
+		for (File batch : batchFiles) {
+			if (!batch.exists()) {
+				System.err.println("No such file or directory: " + batch);
+				return EXIT_USAGE;
+			}
+		}
+
+		ImageBatches batches = new ImageBatches(
+				batchFiles.toArray(new File[batchFiles.size()]), settings);
+		batches.setDocumentSink(sink);
+		for (ImageBatch batch : batches.getBatches()) {
+			if (batch.getNumberOfFiles() == 0)
+				System.err.println("Warning, no images found in "
+						+ batch.getBatchPath());
+		}
+
+		SimpleTimer timer = new SimpleTimer();
+		timer.start();
+		try {
+			batches.analyzeBatches();
+			int printed = FileUtilities.printToFile(batches,
+					new SimplePrinter(), outputPath);
+			timer.stop();
+			timer.print("Identified " + printed + " documents");
+		} catch (IOException e) {
+			System.err.println("Could not write the documents: "
+					+ e.getMessage());
+			return EXIT_FAILURE;
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return EXIT_FAILURE;
+		}
+		return EXIT_OK;
+	}
+
+	private static String value(String[] args, int index, String option) {
+		if (index >= args.length)
+			throw new IllegalArgumentException("Missing value for " + option);
+		return args[index];
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: DocCropConsole [options] batch...");
+		System.err.println("  -o, --output FILE         Write all documents to FILE");
+		System.err.println("  -t, --threads N           Number of worker threads");
+		System.err.println("  --decode-threads N        Number of threads reading images");
+		System.err.println("  --write-threads N         Number of threads writing output");
+		System.err.println("  --queue N                 Maximum number of images read ahead");
+		System.err.println("  --padding-width N         Padding added to the document width");
+		System.err.println("  --padding-height N        Padding added to the document height");
+		System.err.println("  --type SINGLE|DOUBLE      Type of the documents");
+		System.err.println("  --behaviour SIMPLE|COMPLEX");
+		System.err.println("                            Behaviour of the batches");
+		System.err.println("  --filter SUFFIX,...       File suffixes to include");
+		System.err.println("  --cache FILE              Cache the identified documents in FILE");
+		System.err.println("  --cache-size N            Maximum number of cached documents");
+		System.err.println("  --content-hash            Recognize cached files by their contents");
+		System.err.println("  --no-journal              Do not journal the results for resuming");
+		System.err.println("  --stream-correction       Correct the documents while analyzing");
+		System.err.println("  --coarse                  Identify in a coarse image first");
+		System.err.println("  --speculative             Run the retries of hard images in parallel");
+		System.err.println("  --crop                    Also write the cropped documents");
+		System.err.println("  --crop-dir DIR            Directory of the cropped documents");
+		System.err.println("  --crop-format FORMAT      Format of the cropped documents");
+	}
+}